@@ -19,6 +19,8 @@ import playn.core.Clock;
  * actions. Animations can also be sequenced to orchestrate complex correlated actions.
  *
  * <p> {@link #onPaint} should be connected to a {@code paint} signal to drive the animations.
+ * To run animations in lockstep with a fixed rate simulation, connect it to the {@code update}
+ * signal of a {@link tripleplay.util.FixedStep} instead.
  */
 public class Animator extends AnimBuilder
 {
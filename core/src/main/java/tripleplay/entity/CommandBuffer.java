@@ -0,0 +1,206 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.entity;
+
+import java.util.Arrays;
+
+import react.Closeable;
+import react.Slot;
+
+/**
+ * Records structural changes to entities (creation, adding and removing components, enabling and
+ * disposal) so that they can be applied later, in one batch. A system which changes entities
+ * while iterating over them (or while being updated in parallel with other systems, see {@link
+ * World#setTaskPool}) should record those changes in a command buffer rather than making them
+ * directly.
+ *
+ * <p>The world applies all of its command buffers, in the order in which they were created, once
+ * all of its systems have been updated. The commands in a single buffer are applied in the
+ * following order: creations; component additions and removals, grouped by component (so that
+ * each component's storage is updated in one pass), but otherwise in the order recorded; enabling
+ * and disabling; and finally disposals. Commands for an entity which has been disposed by the
+ * time the buffer is applied are ignored, even if its id has since been reused by a new
+ * entity.</p>
+ *
+ * <p>A command buffer is not thread safe: a system which is updated in parallel with other
+ * systems must use its own buffer. Buffers should be created when the system is created, and
+ * {@link #close closed} if they are no longer needed while the world lives on.</p>
+ */
+public class CommandBuffer implements Closeable
+{
+    /** The world to which this buffer's commands are applied. */
+    public final World world;
+
+    /** Creates a command buffer whose commands will be applied to {@code world} after every
+      * update. */
+    public CommandBuffer (World world) {
+        this.world = world;
+        world.register(this);
+    }
+
+    /** Returns true if no commands are waiting to be applied. */
+    public boolean isEmpty () {
+        return _creates == 0 && _compOps == 0 && _entityOps == 0;
+    }
+
+    /**
+     * Records the creation of an entity.
+     *
+     * @param enabled whether the entity should be enabled once it is created.
+     * @param comps the components to add to the entity, or null. The array is not copied, so it
+     * should not be modified until the buffer has been applied.
+     * @param init a slot which will be notified of the new entity (after its components have been
+     * added, but before it is enabled) so that it can initialize the component values, or null.
+     */
+    public void create (boolean enabled, Component[] comps, Slot<Entity> init) {
+        if (_creates == _createComps.length) {
+            int length = _creates*2;
+            _createComps = Arrays.copyOf(_createComps, length);
+            _createInits = Arrays.copyOf(_createInits, length);
+            _createEnabled = Arrays.copyOf(_createEnabled, length);
+        }
+        _createComps[_creates] = comps;
+        _createInits[_creates] = init;
+        _createEnabled[_creates++] = enabled;
+    }
+
+    /** Records the addition of {@code comp} to entity {@code entityId}. This is ignored if the
+      * entity already has the component when the buffer is applied. */
+    public void add (int entityId, Component comp) {
+        addCompOp(entityId, 2*comp.id);
+    }
+
+    /** Records the removal of {@code comp} from entity {@code entityId}. This is ignored if the
+      * entity does not have the component when the buffer is applied. */
+    public void remove (int entityId, Component comp) {
+        addCompOp(entityId, 2*comp.id+1);
+    }
+
+    /** Records a call to {@link Entity#setEnabled} for entity {@code entityId}. */
+    public void setEnabled (int entityId, boolean enabled) {
+        addEntityOp(entityId, enabled ? ENABLE : DISABLE);
+    }
+
+    /** Records a call to {@link Entity#dispose} for entity {@code entityId}. */
+    public void dispose (int entityId) {
+        addEntityOp(entityId, DISPOSE);
+    }
+
+    /** Discards all of the commands recorded in this buffer. */
+    public void clear () {
+        Arrays.fill(_createComps, 0, _creates, null);
+        Arrays.fill(_createInits, 0, _creates, null);
+        _creates = _compOps = _entityOps = 0;
+    }
+
+    /** Discards the commands recorded in this buffer, and unregisters it from its world, so that
+      * it is no longer applied after every update. */
+    @Override public void close () {
+        clear();
+        world.unregister(this);
+    }
+
+    /** Applies the commands recorded in this buffer to our world, and clears the buffer. */
+    void apply () {
+        for (int ii = 0; ii < _creates; ii++) {
+            Entity entity = world.create(false);
+            Component[] comps = _createComps[ii];
+            if (comps != null) entity.add(comps);
+            Slot<Entity> init = _createInits[ii];
+            if (init != null) init.onEmit(entity);
+            if (_createEnabled[ii]) entity.setEnabled(true);
+        }
+
+        if (_compOps > 0) {
+            // sort the component ops by component (stably, via a counting sort), so that each
+            // component's blocks are updated together
+            int ccount = world._comps.size();
+            if (_counts.length < ccount+1) _counts = new int[ccount+1];
+            int[] counts = _counts, ops = _compOpData;
+            Arrays.fill(counts, 0, ccount+1, 0);
+            for (int ii = 0; ii < _compOps; ii++) counts[ops[ii]/2 + 1]++;
+            for (int cc = 1; cc <= ccount; cc++) counts[cc] += counts[cc-1];
+            if (_sorted.length < _compOps) _sorted = new int[ops.length];
+            int[] sorted = _sorted;
+            for (int ii = 0; ii < _compOps; ii++) sorted[counts[ops[ii]/2]++] = ii;
+
+            // ops are recorded with entity handles rather than ids, so that ops for an entity
+            // that was disposed (and whose id may since have been reused) are dropped
+            for (int ii = 0; ii < _compOps; ii++) {
+                int idx = sorted[ii];
+                Entity entity = world.entityFor(_compHandles[idx]);
+                if (entity == null) continue;
+                int op = ops[idx];
+                Component comp = world._comps.get(op/2);
+                boolean has = entity.comps.isSet(comp.id);
+                if ((op & 1) == 0) {
+                    if (has) continue;
+                    comp.add(entity);
+                } else {
+                    if (!has) continue;
+                    comp.remove(entity);
+                }
+                entity.queueChange();
+            }
+        }
+
+        // apply enabling and disabling first, then disposal
+        for (int pass = 0; pass < 2; pass++) {
+            for (int ii = 0; ii < _entityOps; ii++) {
+                int op = _entityOpData[ii];
+                if ((op == DISPOSE) != (pass == 1)) continue;
+                Entity entity = world.entityFor(_entityHandles[ii]);
+                if (entity == null) continue;
+                if (op == DISPOSE) entity.dispose();
+                else entity.setEnabled(op == ENABLE);
+            }
+        }
+
+        clear();
+    }
+
+    protected void addCompOp (int entityId, int op) {
+        if (_compOps == _compOpData.length) {
+            _compHandles = Arrays.copyOf(_compHandles, _compOps*2);
+            _compOpData = Arrays.copyOf(_compOpData, _compOps*2);
+        }
+        _compHandles[_compOps] = world.entity(entityId).handle();
+        _compOpData[_compOps++] = op;
+    }
+
+    protected void addEntityOp (int entityId, int op) {
+        if (_entityOps == _entityOpData.length) {
+            _entityHandles = Arrays.copyOf(_entityHandles, _entityOps*2);
+            _entityOpData = Arrays.copyOf(_entityOpData, _entityOps*2);
+        }
+        _entityHandles[_entityOps] = world.entity(entityId).handle();
+        _entityOpData[_entityOps++] = op;
+    }
+
+    // pending creations
+    protected Component[][] _createComps = new Component[INIT_SIZE][];
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    protected Slot<Entity>[] _createInits = new Slot[INIT_SIZE];
+    protected boolean[] _createEnabled = new boolean[INIT_SIZE];
+    protected int _creates;
+
+    // pending component ops: the handle of each op's entity, and its component id * 2 +
+    // (remove ? 1 : 0)
+    protected long[] _compHandles = new long[INIT_SIZE];
+    protected int[] _compOpData = new int[INIT_SIZE];
+    protected int _compOps;
+
+    // pending enable/disable/dispose ops: the handle of each op's entity, and the op
+    protected long[] _entityHandles = new long[INIT_SIZE];
+    protected int[] _entityOpData = new int[INIT_SIZE];
+    protected int _entityOps;
+
+    // scratch arrays used when sorting component ops (the latter holds indices of sorted ops)
+    protected int[] _counts = new int[0], _sorted = new int[0];
+
+    protected static final int ENABLE = 0, DISABLE = 1, DISPOSE = 2;
+    protected static final int INIT_SIZE = 16;
+}
@@ -5,9 +5,18 @@
 
 package tripleplay.entity;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import playn.core.Color;
+
 import pythagoras.f.Dimension;
+import pythagoras.f.IVector3;
 import pythagoras.f.Point;
 import pythagoras.f.Vector;
+import pythagoras.f.Vector3;
+
+import tripleplay.util.BitVec;
 
 /**
  * A component contains the data for a single aspect of an entity. This might be its position in a
@@ -23,7 +32,24 @@ public abstract class Component
 {
     /** A component implementation for arbitrary objects. */
     public static final class Generic<T> extends Component {
-        public Generic (World world) { super(world); }
+        /** Converts the values of a generic component to and from bytes, so that they can be
+         * included in world snapshots. See {@link World#writeSnapshot}. */
+        public interface Codec<T> {
+            /** Writes {@code value} (which is never null) to {@code buf}. */
+            void write (T value, ByteBuffer buf);
+            /** Reads a value written by {@link #write} from {@code buf}. */
+            T read (ByteBuffer buf);
+        }
+
+        /** Creates a generic component whose values are not included in world snapshots. */
+        public Generic (World world) { this(world, null); }
+
+        /** Creates a generic component whose values are written to and read from world snapshots
+         * via {@code codec}. */
+        public Generic (World world, Codec<T> codec) {
+            super(world);
+            _codec = codec;
+        }
 
         /** Returns the value of this component for {@code entityId}. */
         public T get (int entityId) {
@@ -61,7 +87,50 @@ public abstract class Component
          * it to the pool. */
         protected void release (T value) {}
 
+        @Override protected int trim (BitVec used) {
+            int freed = freeBlocks(_blocks, used, REF_BYTES*BLOCK);
+            _blocks = shrink(_blocks);
+            return freed;
+        }
+
+        @Override protected void write (ByteBuffer buf) {
+            // without a codec we write only which blocks exist, so that a restore allocates them
+            for (int ii = 0; ii < _blocks.length; ii++) {
+                Object[] block = _blocks[ii];
+                if (block == null) continue;
+                buf.putInt(ii);
+                if (_codec == null) continue;
+                for (int jj = 0; jj < BLOCK; jj++) {
+                    @SuppressWarnings("unchecked") T value = (T)block[jj];
+                    if (value == null) buf.put((byte)0);
+                    else {
+                        buf.put((byte)1);
+                        _codec.write(value, buf);
+                    }
+                }
+            }
+            buf.putInt(-1);
+        }
+
+        @Override protected void read (ByteBuffer buf) {
+            for (int ii = buf.getInt(); ii >= 0; ii = buf.getInt()) {
+                if (ii >= _blocks.length) {
+                    _blocks = Arrays.copyOf(_blocks, grownLength(_blocks, ii));
+                }
+                Object[] block = _blocks[ii];
+                if (block == null) block = _blocks[ii] = new Object[BLOCK];
+                if (_codec == null) continue;
+                for (int jj = 0; jj < BLOCK; jj++) {
+                    @SuppressWarnings("unchecked") T prev = (T)block[jj];
+                    T value = (buf.get() == 0) ? null : _codec.read(buf);
+                    block[jj] = value;
+                    if (prev != null && prev != value) release(prev);
+                }
+            }
+        }
+
         protected Object[][] _blocks = new Object[INDEX_BLOCKS][];
+        protected final Codec<T> _codec;
     }
 
     /** A component implementation for a single scalar {@code int}. */
@@ -93,6 +162,20 @@ public abstract class Component
             if (_blocks[blockIdx] == null) _blocks[blockIdx] = new int[BLOCK];
         }
 
+        @Override protected int trim (BitVec used) {
+            int freed = freeBlocks(_blocks, used, 4*BLOCK);
+            _blocks = shrink(_blocks);
+            return freed;
+        }
+
+        @Override protected void write (ByteBuffer buf) {
+            writeBlocks(buf, _blocks);
+        }
+
+        @Override protected void read (ByteBuffer buf) {
+            _blocks = readBlocks(buf, _blocks, BLOCK);
+        }
+
         private int[][] _blocks = new int[INDEX_BLOCKS][];
     }
 
@@ -125,6 +208,20 @@ public abstract class Component
             if (_blocks[blockIdx] == null) _blocks[blockIdx] = new float[BLOCK];
         }
 
+        @Override protected int trim (BitVec used) {
+            int freed = freeBlocks(_blocks, used, 4*BLOCK);
+            _blocks = shrink(_blocks);
+            return freed;
+        }
+
+        @Override protected void write (ByteBuffer buf) {
+            writeBlocks(buf, _blocks);
+        }
+
+        @Override protected void read (ByteBuffer buf) {
+            _blocks = readBlocks(buf, _blocks, BLOCK);
+        }
+
         private float[][] _blocks = new float[INDEX_BLOCKS][];
     }
 
@@ -172,6 +269,24 @@ public abstract class Component
             return into;
         }
 
+        /** Returns the x component of the point for {@code entityId}, interpolated between its
+          * value in {@code prev} (at {@code alpha} zero) and its value in this component (at
+          * {@code alpha} one). Useful when painting with a fixed update step, see {@link
+          * World#connectFixed}. */
+        public float lerpX (int entityId, Component.XY prev, float alpha) {
+            int blockIdx = entityId / BLOCK, idx = 2*(entityId % BLOCK);
+            float px = prev._blocks[blockIdx][idx];
+            return px + (_blocks[blockIdx][idx] - px) * alpha;
+        }
+
+        /** Returns the y component of the point for {@code entityId}, interpolated between its
+          * value in {@code prev} and its value in this component. See {@link #lerpX}. */
+        public float lerpY (int entityId, Component.XY prev, float alpha) {
+            int blockIdx = entityId / BLOCK, idx = 2*(entityId % BLOCK) + 1;
+            float py = prev._blocks[blockIdx][idx];
+            return py + (_blocks[blockIdx][idx] - py) * alpha;
+        }
+
         /** Updates the x component of the point for {@code entityId}. */
         public void setX (int entityId, float x) {
             _blocks[entityId / BLOCK][2*(entityId % BLOCK)] = x;
@@ -211,6 +326,14 @@ public abstract class Component
             block[idx+1] += dy;
         }
 
+        /** Adds the value of {@code other} for {@code entityId} to this component. */
+        public void add (int entityId, Component.XY other) {
+            int blockIdx = entityId / BLOCK, idx = 2*(entityId % BLOCK);
+            float[] oblock = other._blocks[blockIdx], block = _blocks[blockIdx];
+            block[idx] += oblock[idx];
+            block[idx+1] += oblock[idx+1];
+        }
+
         @Override protected void init (int entityId) {
             int blockIdx = entityId / BLOCK;
             if (blockIdx >= _blocks.length) {
@@ -221,6 +344,20 @@ public abstract class Component
             if (_blocks[blockIdx] == null) _blocks[blockIdx] = new float[2*BLOCK];
         }
 
+        @Override protected int trim (BitVec used) {
+            int freed = freeBlocks(_blocks, used, 2*4*BLOCK);
+            _blocks = shrink(_blocks);
+            return freed;
+        }
+
+        @Override protected void write (ByteBuffer buf) {
+            writeBlocks(buf, _blocks);
+        }
+
+        @Override protected void read (ByteBuffer buf) {
+            _blocks = readBlocks(buf, _blocks, 2*BLOCK);
+        }
+
         private float[][] _blocks = new float[INDEX_BLOCKS][];
     }
 
@@ -276,9 +413,399 @@ public abstract class Component
             if (_blocks[blockIdx] == null) _blocks[blockIdx] = new int[BLOCK];
         }
 
+        @Override protected int trim (BitVec used) {
+            int freed = freeBlocks(_blocks, used, 4*BLOCK);
+            _blocks = shrink(_blocks);
+            return freed;
+        }
+
+        @Override protected void write (ByteBuffer buf) {
+            writeBlocks(buf, _blocks);
+        }
+
+        @Override protected void read (ByteBuffer buf) {
+            _blocks = readBlocks(buf, _blocks, BLOCK);
+        }
+
         private int[][] _blocks = new int[INDEX_BLOCKS][];
     }
 
+    /** A component implementation for a single scalar {@code long}. */
+    public static final class LScalar extends Component {
+        public LScalar (World world) { super(world); }
+
+        /** Returns the value of this component for {@code entityId}. */
+        public long get (int entityId) {
+            return _blocks[entityId / BLOCK][entityId % BLOCK];
+        }
+
+        /** Updates the value of this component for {@code entityId}. */
+        public void set (int entityId, long value) {
+            _blocks[entityId / BLOCK][entityId % BLOCK] = value;
+        }
+
+        /** Adds {@code dv} to the value of this component for {@code entityId}. */
+        public void add (int entityId, long dv) {
+            _blocks[entityId / BLOCK][entityId % BLOCK] += dv;
+        }
+
+        @Override protected void init (int entityId) {
+            int blockIdx = entityId / BLOCK;
+            if (blockIdx >= _blocks.length) {
+                long[][] blocks = new long[_blocks.length*2][];
+                java.lang.System.arraycopy(_blocks, 0, blocks, 0, _blocks.length);
+                _blocks = blocks;
+            }
+            if (_blocks[blockIdx] == null) _blocks[blockIdx] = new long[BLOCK];
+        }
+
+        @Override protected int trim (BitVec used) {
+            int freed = freeBlocks(_blocks, used, 8*BLOCK);
+            _blocks = shrink(_blocks);
+            return freed;
+        }
+
+        @Override protected void write (ByteBuffer buf) {
+            writeBlocks(buf, _blocks);
+        }
+
+        @Override protected void read (ByteBuffer buf) {
+            _blocks = readBlocks(buf, _blocks, BLOCK);
+        }
+
+        private long[][] _blocks = new long[INDEX_BLOCKS][];
+    }
+
+    /** A component implementation for a single scalar {@code double}. */
+    public static final class DScalar extends Component {
+        public DScalar (World world) { super(world); }
+
+        /** Returns the value of this component for {@code entityId}. */
+        public double get (int entityId) {
+            return _blocks[entityId / BLOCK][entityId % BLOCK];
+        }
+
+        /** Updates the value of this component for {@code entityId}. */
+        public void set (int entityId, double value) {
+            _blocks[entityId / BLOCK][entityId % BLOCK] = value;
+        }
+
+        /** Adds {@code dv} to the value of this component for {@code entityId}. */
+        public void add (int entityId, double dv) {
+            _blocks[entityId / BLOCK][entityId % BLOCK] += dv;
+        }
+
+        @Override protected void init (int entityId) {
+            int blockIdx = entityId / BLOCK;
+            if (blockIdx >= _blocks.length) {
+                double[][] blocks = new double[_blocks.length*2][];
+                java.lang.System.arraycopy(_blocks, 0, blocks, 0, _blocks.length);
+                _blocks = blocks;
+            }
+            if (_blocks[blockIdx] == null) _blocks[blockIdx] = new double[BLOCK];
+        }
+
+        @Override protected int trim (BitVec used) {
+            int freed = freeBlocks(_blocks, used, 8*BLOCK);
+            _blocks = shrink(_blocks);
+            return freed;
+        }
+
+        @Override protected void write (ByteBuffer buf) {
+            writeBlocks(buf, _blocks);
+        }
+
+        @Override protected void read (ByteBuffer buf) {
+            _blocks = readBlocks(buf, _blocks, BLOCK);
+        }
+
+        private double[][] _blocks = new double[INDEX_BLOCKS][];
+    }
+
+    /** A component implementation for a triple of {@code float}s. */
+    public static final class XYZ extends Component {
+        public XYZ (World world) { super(world); }
+
+        /** Returns the x component of the triple for {@code entityId}. */
+        public float getX (int entityId) {
+            return _blocks[entityId / BLOCK][3*(entityId % BLOCK)];
+        }
+
+        /** Returns the y component of the triple for {@code entityId}. */
+        public float getY (int entityId) {
+            return _blocks[entityId / BLOCK][3*(entityId % BLOCK) + 1];
+        }
+
+        /** Returns the z component of the triple for {@code entityId}. */
+        public float getZ (int entityId) {
+            return _blocks[entityId / BLOCK][3*(entityId % BLOCK) + 2];
+        }
+
+        /** Writes the x/y/z components of the triple for {@code entityId} into {@code into}.
+         * @return into for easy method chaining. */
+        public Vector3 get (int entityId, Vector3 into) {
+            float[] block = _blocks[entityId / BLOCK];
+            int idx = 3*(entityId % BLOCK);
+            into.x = block[idx];
+            into.y = block[idx + 1];
+            into.z = block[idx + 2];
+            return into;
+        }
+
+        /** Updates the x component of the triple for {@code entityId}. */
+        public void setX (int entityId, float x) {
+            _blocks[entityId / BLOCK][3*(entityId % BLOCK)] = x;
+        }
+
+        /** Updates the y component of the triple for {@code entityId}. */
+        public void setY (int entityId, float y) {
+            _blocks[entityId / BLOCK][3*(entityId % BLOCK) + 1] = y;
+        }
+
+        /** Updates the z component of the triple for {@code entityId}. */
+        public void setZ (int entityId, float z) {
+            _blocks[entityId / BLOCK][3*(entityId % BLOCK) + 2] = z;
+        }
+
+        /** Updates the x/y/z components of the triple for {@code entityId}. */
+        public void set (int entityId, IVector3 value) {
+            set(entityId, value.x(), value.y(), value.z());
+        }
+
+        /** Updates the x/y/z components of the triple for {@code entityId}. */
+        public void set (int entityId, float x, float y, float z) {
+            float[] block = _blocks[entityId / BLOCK];
+            int idx = 3*(entityId % BLOCK);
+            block[idx] = x;
+            block[idx+1] = y;
+            block[idx+2] = z;
+        }
+
+        /** Copies the value of {@code other} for {@code entityId} to this component. */
+        public void set (int entityId, Component.XYZ other) {
+            int blockIdx = entityId / BLOCK, idx = 3*(entityId % BLOCK);
+            float[] oblock = other._blocks[blockIdx], block = _blocks[blockIdx];
+            block[idx] = oblock[idx];
+            block[idx+1] = oblock[idx+1];
+            block[idx+2] = oblock[idx+2];
+        }
+
+        /** Adds {@code dx}, {@code dy} and {@code dz} to the components for {@code entityId}. */
+        public void add (int entityId, float dx, float dy, float dz) {
+            float[] block = _blocks[entityId / BLOCK];
+            int idx = 3*(entityId % BLOCK);
+            block[idx] += dx;
+            block[idx+1] += dy;
+            block[idx+2] += dz;
+        }
+
+        /** Adds the value of {@code other} for {@code entityId} to this component. */
+        public void add (int entityId, Component.XYZ other) {
+            int blockIdx = entityId / BLOCK, idx = 3*(entityId % BLOCK);
+            float[] oblock = other._blocks[blockIdx], block = _blocks[blockIdx];
+            block[idx] += oblock[idx];
+            block[idx+1] += oblock[idx+1];
+            block[idx+2] += oblock[idx+2];
+        }
+
+        @Override protected void init (int entityId) {
+            int blockIdx = entityId / BLOCK;
+            if (blockIdx >= _blocks.length) {
+                float[][] blocks = new float[_blocks.length*2][];
+                java.lang.System.arraycopy(_blocks, 0, blocks, 0, _blocks.length);
+                _blocks = blocks;
+            }
+            if (_blocks[blockIdx] == null) _blocks[blockIdx] = new float[3*BLOCK];
+        }
+
+        @Override protected int trim (BitVec used) {
+            int freed = freeBlocks(_blocks, used, 3*4*BLOCK);
+            _blocks = shrink(_blocks);
+            return freed;
+        }
+
+        @Override protected void write (ByteBuffer buf) {
+            writeBlocks(buf, _blocks);
+        }
+
+        @Override protected void read (ByteBuffer buf) {
+            _blocks = readBlocks(buf, _blocks, 3*BLOCK);
+        }
+
+        private float[][] _blocks = new float[INDEX_BLOCKS][];
+    }
+
+    /** A component implementation for a color, packed into an {@code int} in ARGB order. */
+    public static final class ARGB extends Component {
+        public ARGB (World world) { super(world); }
+
+        /** Returns the packed ARGB color for {@code entityId}. */
+        public int get (int entityId) {
+            return _blocks[entityId / BLOCK][entityId % BLOCK];
+        }
+
+        /** Returns the alpha component (0-255) of the color for {@code entityId}. */
+        public int alpha (int entityId) {
+            return Color.alpha(get(entityId));
+        }
+
+        /** Returns the red component (0-255) of the color for {@code entityId}. */
+        public int red (int entityId) {
+            return Color.red(get(entityId));
+        }
+
+        /** Returns the green component (0-255) of the color for {@code entityId}. */
+        public int green (int entityId) {
+            return Color.green(get(entityId));
+        }
+
+        /** Returns the blue component (0-255) of the color for {@code entityId}. */
+        public int blue (int entityId) {
+            return Color.blue(get(entityId));
+        }
+
+        /** Updates the packed ARGB color for {@code entityId}. */
+        public void set (int entityId, int argb) {
+            _blocks[entityId / BLOCK][entityId % BLOCK] = argb;
+        }
+
+        /** Updates the color for {@code entityId}. Components are in the range 0-255. */
+        public void set (int entityId, int a, int r, int g, int b) {
+            set(entityId, Color.argb(a, r, g, b));
+        }
+
+        /** Updates the color for {@code entityId}. Components are in the range 0-1. */
+        public void set (int entityId, float a, float r, float g, float b) {
+            set(entityId, Color.argb((int)(a*255), (int)(r*255), (int)(g*255), (int)(b*255)));
+        }
+
+        /** Copies the value of {@code other} for {@code entityId} to this component. */
+        public void set (int entityId, Component.ARGB other) {
+            int blockIdx = entityId / BLOCK, idx = entityId % BLOCK;
+            _blocks[blockIdx][idx] = other._blocks[blockIdx][idx];
+        }
+
+        /** Replaces the alpha component (0-255) of the color for {@code entityId}. */
+        public void setAlpha (int entityId, int alpha) {
+            set(entityId, Color.withAlpha(get(entityId), alpha));
+        }
+
+        @Override protected void init (int entityId) {
+            int blockIdx = entityId / BLOCK;
+            if (blockIdx >= _blocks.length) {
+                int[][] blocks = new int[_blocks.length*2][];
+                java.lang.System.arraycopy(_blocks, 0, blocks, 0, _blocks.length);
+                _blocks = blocks;
+            }
+            if (_blocks[blockIdx] == null) _blocks[blockIdx] = new int[BLOCK];
+        }
+
+        @Override protected int trim (BitVec used) {
+            int freed = freeBlocks(_blocks, used, 4*BLOCK);
+            _blocks = shrink(_blocks);
+            return freed;
+        }
+
+        @Override protected void write (ByteBuffer buf) {
+            writeBlocks(buf, _blocks);
+        }
+
+        @Override protected void read (ByteBuffer buf) {
+            _blocks = readBlocks(buf, _blocks, BLOCK);
+        }
+
+        private int[][] _blocks = new int[INDEX_BLOCKS][];
+    }
+
+    /**
+     * A component implementation for a fixed number of {@code float}s per entity (for example a
+     * rotation and x/y scale, or a 2D affine transform). The floats for each entity are stored
+     * contiguously, and the floats for a block of entities are stored in a single array, so
+     * processing entities in id order walks linearly through memory.
+     */
+    public static final class FVec extends Component {
+        /** The number of floats stored for each entity. */
+        public final int stride;
+
+        public FVec (World world, int stride) {
+            super(world);
+            if (stride <= 0) throw new IllegalArgumentException("Stride must be positive.");
+            this.stride = stride;
+        }
+
+        /** Returns the {@code index}th float of the vector for {@code entityId}. */
+        public float get (int entityId, int index) {
+            return _blocks[entityId / BLOCK][stride*(entityId % BLOCK) + index];
+        }
+
+        /** Copies the vector for {@code entityId} into {@code into} at {@code offset}.
+         * @return into for easy method chaining. */
+        public float[] get (int entityId, float[] into, int offset) {
+            java.lang.System.arraycopy(_blocks[entityId / BLOCK], stride*(entityId % BLOCK),
+                                       into, offset, stride);
+            return into;
+        }
+
+        /** Updates the {@code index}th float of the vector for {@code entityId}. */
+        public void set (int entityId, int index, float value) {
+            _blocks[entityId / BLOCK][stride*(entityId % BLOCK) + index] = value;
+        }
+
+        /** Updates the vector for {@code entityId} from {@code values} starting at {@code
+         * offset}. */
+        public void set (int entityId, float[] values, int offset) {
+            java.lang.System.arraycopy(values, offset, _blocks[entityId / BLOCK],
+                                       stride*(entityId % BLOCK), stride);
+        }
+
+        /** Copies the value of {@code other} for {@code entityId} to this component. {@code other}
+         * must have the same stride as this component. */
+        public void set (int entityId, Component.FVec other) {
+            int blockIdx = entityId / BLOCK, idx = stride*(entityId % BLOCK);
+            java.lang.System.arraycopy(
+                other._blocks[blockIdx], idx, _blocks[blockIdx], idx, stride);
+        }
+
+        /** Adds {@code dv} to the {@code index}th float of the vector for {@code entityId}. */
+        public void add (int entityId, int index, float dv) {
+            _blocks[entityId / BLOCK][stride*(entityId % BLOCK) + index] += dv;
+        }
+
+        /** Adds the value of {@code other} for {@code entityId} to this component. {@code other}
+         * must have the same stride as this component. */
+        public void add (int entityId, Component.FVec other) {
+            int blockIdx = entityId / BLOCK, idx = stride*(entityId % BLOCK);
+            float[] oblock = other._blocks[blockIdx], block = _blocks[blockIdx];
+            for (int ii = idx, ll = idx+stride; ii < ll; ii++) block[ii] += oblock[ii];
+        }
+
+        @Override protected void init (int entityId) {
+            int blockIdx = entityId / BLOCK;
+            if (blockIdx >= _blocks.length) {
+                float[][] blocks = new float[_blocks.length*2][];
+                java.lang.System.arraycopy(_blocks, 0, blocks, 0, _blocks.length);
+                _blocks = blocks;
+            }
+            if (_blocks[blockIdx] == null) _blocks[blockIdx] = new float[stride*BLOCK];
+        }
+
+        @Override protected int trim (BitVec used) {
+            int freed = freeBlocks(_blocks, used, stride*4*BLOCK);
+            _blocks = shrink(_blocks);
+            return freed;
+        }
+
+        @Override protected void write (ByteBuffer buf) {
+            writeBlocks(buf, _blocks);
+        }
+
+        @Override protected void read (ByteBuffer buf) {
+            _blocks = readBlocks(buf, _blocks, stride*BLOCK);
+        }
+
+        private float[][] _blocks = new float[INDEX_BLOCKS][];
+    }
+
     /** The world in which this component exists. */
     public final World world;
 
@@ -297,13 +824,171 @@ public abstract class Component
     /** Clears the value of the component at {@code index}. */
     protected void clear (int index) {} // noop by default
 
+    /**
+     * Releases the storage for any block of entities in which no entity has this component, and
+     * shrinks the index of blocks if possible. See {@link World#trim}.
+     *
+     * @param used a bit vector in which bit {@code N} is set if any entity in the {@code N}th
+     * block (entity ids {@code N*BLOCK} to {@code (N+1)*BLOCK-1}) has this component.
+     * @return the approximate number of bytes released.
+     */
+    protected int trim (BitVec used) { return 0; } // noop by default
+
+    /** Clears the non-null blocks in {@code blocks} which are not marked as {@code used}.
+      * @param blockBytes the size of a single block, in bytes.
+      * @return the approximate number of bytes released, including those that will be released
+      * by a subsequent call to {@link #shrink}. */
+    protected static int freeBlocks (Object[] blocks, BitVec used, int blockBytes) {
+        int freed = 0;
+        for (int ii = 0; ii < blocks.length; ii++) {
+            if (blocks[ii] != null && !used.isSet(ii)) {
+                blocks[ii] = null;
+                freed += blockBytes;
+            }
+        }
+        return freed + (blocks.length - shrunkLength(blocks)) * REF_BYTES;
+    }
+
+    /** Returns {@code blocks} shrunk to the smallest power of two (no smaller than {@link
+      * #INDEX_BLOCKS}) that contains all of its non-null blocks, or {@code blocks} itself if it
+      * cannot be shrunk. */
+    protected static <T> T[] shrink (T[] blocks) {
+        int length = shrunkLength(blocks);
+        return (length < blocks.length) ? Arrays.copyOf(blocks, length) : blocks;
+    }
+
+    /**
+     * Writes the values of this component for all entities to {@code buf}. See {@link
+     * World#writeSnapshot}. The default writes nothing, so a custom component must override both
+     * this method and {@link #read} for its values to be included in snapshots.
+     */
+    protected void write (ByteBuffer buf) {} // noop by default
+
+    /** Reads the values written by {@link #write} from {@code buf}, replacing the values of this
+      * component for all entities in the snapshot. See {@link World#readSnapshot}. */
+    protected void read (ByteBuffer buf) {} // noop by default
+
+    /** Writes the non-null blocks in {@code blocks} to {@code buf}. Each block is written as its
+      * index followed by its contents, and the sequence is terminated by -1. */
+    protected static void writeBlocks (ByteBuffer buf, int[][] blocks) {
+        for (int ii = 0; ii < blocks.length; ii++) {
+            int[] block = blocks[ii];
+            if (block == null) continue;
+            buf.putInt(ii);
+            buf.asIntBuffer().put(block);
+            buf.position(buf.position() + 4*block.length);
+        }
+        buf.putInt(-1);
+    }
+
+    /** Writes the non-null blocks in {@code blocks} to {@code buf}. See {@link #writeBlocks}. */
+    protected static void writeBlocks (ByteBuffer buf, float[][] blocks) {
+        for (int ii = 0; ii < blocks.length; ii++) {
+            float[] block = blocks[ii];
+            if (block == null) continue;
+            buf.putInt(ii);
+            buf.asFloatBuffer().put(block);
+            buf.position(buf.position() + 4*block.length);
+        }
+        buf.putInt(-1);
+    }
+
+    /** Writes the non-null blocks in {@code blocks} to {@code buf}. See {@link #writeBlocks}. */
+    protected static void writeBlocks (ByteBuffer buf, long[][] blocks) {
+        for (int ii = 0; ii < blocks.length; ii++) {
+            long[] block = blocks[ii];
+            if (block == null) continue;
+            buf.putInt(ii);
+            // (we don't use a long buffer view, as GWT doesn't support them)
+            for (long value : block) buf.putLong(value);
+        }
+        buf.putInt(-1);
+    }
+
+    /** Writes the non-null blocks in {@code blocks} to {@code buf}. See {@link #writeBlocks}. */
+    protected static void writeBlocks (ByteBuffer buf, double[][] blocks) {
+        for (int ii = 0; ii < blocks.length; ii++) {
+            double[] block = blocks[ii];
+            if (block == null) continue;
+            buf.putInt(ii);
+            // (we don't use a double buffer view, as GWT doesn't support them)
+            for (double value : block) buf.putDouble(value);
+        }
+        buf.putInt(-1);
+    }
+
+    /** Reads blocks written by {@link #writeBlocks} into {@code blocks}, allocating blocks (each
+      * containing {@code blockSize} values) as needed. Blocks that were not written are left as
+      * they are.
+      * @return {@code blocks}, or a larger copy if it had to be grown. */
+    protected static int[][] readBlocks (ByteBuffer buf, int[][] blocks, int blockSize) {
+        for (int ii = buf.getInt(); ii >= 0; ii = buf.getInt()) {
+            if (ii >= blocks.length) blocks = Arrays.copyOf(blocks, grownLength(blocks, ii));
+            int[] block = blocks[ii];
+            if (block == null) block = blocks[ii] = new int[blockSize];
+            buf.asIntBuffer().get(block);
+            buf.position(buf.position() + 4*blockSize);
+        }
+        return blocks;
+    }
+
+    /** Reads blocks written by {@link #writeBlocks}. See {@link #readBlocks}. */
+    protected static float[][] readBlocks (ByteBuffer buf, float[][] blocks, int blockSize) {
+        for (int ii = buf.getInt(); ii >= 0; ii = buf.getInt()) {
+            if (ii >= blocks.length) blocks = Arrays.copyOf(blocks, grownLength(blocks, ii));
+            float[] block = blocks[ii];
+            if (block == null) block = blocks[ii] = new float[blockSize];
+            buf.asFloatBuffer().get(block);
+            buf.position(buf.position() + 4*blockSize);
+        }
+        return blocks;
+    }
+
+    /** Reads blocks written by {@link #writeBlocks}. See {@link #readBlocks}. */
+    protected static long[][] readBlocks (ByteBuffer buf, long[][] blocks, int blockSize) {
+        for (int ii = buf.getInt(); ii >= 0; ii = buf.getInt()) {
+            if (ii >= blocks.length) blocks = Arrays.copyOf(blocks, grownLength(blocks, ii));
+            long[] block = blocks[ii];
+            if (block == null) block = blocks[ii] = new long[blockSize];
+            for (int vv = 0; vv < blockSize; vv++) block[vv] = buf.getLong();
+        }
+        return blocks;
+    }
+
+    /** Reads blocks written by {@link #writeBlocks}. See {@link #readBlocks}. */
+    protected static double[][] readBlocks (ByteBuffer buf, double[][] blocks, int blockSize) {
+        for (int ii = buf.getInt(); ii >= 0; ii = buf.getInt()) {
+            if (ii >= blocks.length) blocks = Arrays.copyOf(blocks, grownLength(blocks, ii));
+            double[] block = blocks[ii];
+            if (block == null) block = blocks[ii] = new double[blockSize];
+            for (int vv = 0; vv < blockSize; vv++) block[vv] = buf.getDouble();
+        }
+        return blocks;
+    }
+
+    private static int grownLength (Object[] blocks, int index) {
+        int length = Math.max(blocks.length, 1);
+        while (length <= index) length *= 2;
+        return length;
+    }
+
+    private static int shrunkLength (Object[] blocks) {
+        int last = blocks.length-1;
+        while (last >= 0 && blocks[last] == null) last--;
+        int length = INDEX_BLOCKS;
+        while (length <= last) length *= 2;
+        return Math.min(length, blocks.length);
+    }
+
     void add (Entity entity) {
         entity.comps.set(id);
+        entity.changedComps.set(id);
         init(entity.id);
     }
 
     void remove (Entity entity) {
         entity.comps.clear(id);
+        entity.changedComps.set(id);
         clear(entity.id);
     }
 
@@ -315,4 +1000,7 @@ public abstract class Component
 
     /** The number of index blocks to allocate by default. */
     protected static final int INDEX_BLOCKS = 32;
+
+    /** The (approximate) size of an object reference, used when reporting trimmed storage. */
+    protected static final int REF_BYTES = 4;
 }
@@ -30,6 +30,19 @@ public final class Entity implements Closeable
         this.id = id;
     }
 
+    /** Returns a handle that uniquely identifies this incarnation of this entity. Unlike {@link
+     * #id}, a handle is never reused: once this entity is disposed, {@link World#isAlive} will
+     * report that the handle is dead, even after this entity's id has been recycled for a new
+     * entity. Thus it is safe to hold onto handles (in components, say) rather than ids. Use
+     * {@link World#handleId} to obtain an entity's id from its handle.
+     *
+     * <p>The handle packs the id into its low 32 bits and a generation counter, which is
+     * incremented every time the id is recycled, into its high 32 bits.</p>
+     */
+    public long handle () {
+        return ((long)world._generations[id] << 32) | id;
+    }
+
     /** Returns whether this entity has been disposed. */
     public boolean isDisposed () {
         return (_flags & DISPOSED) != 0;
@@ -169,7 +182,7 @@ public final class Entity implements Closeable
     boolean isAdded () { return (_flags & ADDED) != 0; }
     void noteAdded () { _flags |= ADDED; }
     void clearChanging () { _flags &= ~CHANGING; }
-    void reset () { _flags = 0; }
+    void reset () { _flags = 0; changedComps.clear(); }
 
     /** A bit mask indicating which systems are interested in this entity. */
     final BitVec systems = new BitVec(2);
@@ -177,6 +190,10 @@ public final class Entity implements Closeable
     /** A bit mask indicating which components are possessed by this entity. */
     final BitVec comps = new BitVec(2);
 
+    /** A bit mask indicating which components have been added or removed since this entity was
+     * last processed by the world. */
+    final BitVec changedComps = new BitVec(2);
+
     /** Flags pertaining to this entity's state. */
     protected int _flags;
 
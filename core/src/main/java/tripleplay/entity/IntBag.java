@@ -45,6 +45,10 @@ public class IntBag implements System.Entities
         return -1;
     }
     public int removeLast () { return _elems[--_size]; }
+    public void removeFirst (int count) {
+        java.lang.System.arraycopy(_elems, count, _elems, 0, _size - count);
+        _size -= count;
+    }
     public void removeAll () { _size = 0; }
 
     @Override public String toString () {
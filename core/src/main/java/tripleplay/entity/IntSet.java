@@ -0,0 +1,97 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.entity;
+
+import java.util.Arrays;
+
+/**
+ * An unordered set of non-negative ints. The elements are kept in a dense array (exactly as in
+ * {@link IntBag}) and a sparse index maps each element to its position in that array, which makes
+ * {@link #add}, {@link #remove} and {@link #contains} all O(1). Removal swaps the last element
+ * into the hole, just like {@link IntBag#removeAt}. Used internally by entity things.
+ */
+public class IntSet extends IntBag
+{
+    /** Returns the index of {@code elem} in the dense array, or -1 if it is not in this set. */
+    public int indexOf (int elem) {
+        return (elem < _index.length) ? _index[elem] - 1 : -1;
+    }
+
+    @Override public boolean contains (int elem) {
+        return elem < _index.length && _index[elem] != 0;
+    }
+
+    /** Adds {@code elem} to this set. {@code elem} must be non-negative and must not already be in
+     * the set; this is not checked. */
+    @Override public int add (int elem) {
+        if (elem >= _index.length) expandIndex(elem);
+        int size = super.add(elem);
+        _index[elem] = size;
+        return size;
+    }
+
+    @Override public int removeAt (int index) {
+        int elem = _elems[index], last = _elems[--_size];
+        _elems[index] = last;
+        _index[last] = index+1;
+        _index[elem] = 0;
+        return elem;
+    }
+
+    @Override public int remove (int elem) {
+        int idx = indexOf(elem);
+        if (idx >= 0) removeAt(idx);
+        return idx;
+    }
+
+    @Override public int removeLast () {
+        int elem = _elems[--_size];
+        _index[elem] = 0;
+        return elem;
+    }
+
+    @Override public void removeAll () {
+        for (int ii = 0, ll = _size; ii < ll; ii++) _index[_elems[ii]] = 0;
+        _size = 0;
+    }
+
+    /** Sorts the elements of this set into ascending order. */
+    public void sort () {
+        Arrays.sort(_elems, 0, _size);
+        for (int ii = 0, ll = _size; ii < ll; ii++) _index[_elems[ii]] = ii+1;
+    }
+
+    /** Shrinks this set's elements array to its current size, and its index to the smallest size
+     * that fits its current elements.
+     * @return the approximate number of bytes released. */
+    public int trim () {
+        int freed = 0;
+        if (_size < _elems.length) {
+            freed += (_elems.length - _size) * 4;
+            _elems = Arrays.copyOf(_elems, _size);
+        }
+        int max = -1;
+        for (int ii = 0, ll = _size; ii < ll; ii++) max = Math.max(max, _elems[ii]);
+        int length = INDEX_SIZE;
+        while (length <= max) length *= 2;
+        if (length < _index.length) {
+            freed += (_index.length - length) * 4;
+            _index = Arrays.copyOf(_index, length);
+        }
+        return freed;
+    }
+
+    private void expandIndex (int elem) {
+        int[] index = new int[Math.max(_index.length*2, elem+1)];
+        java.lang.System.arraycopy(_index, 0, index, 0, _index.length);
+        _index = index;
+    }
+
+    /** Maps an element to its position in {@link #_elems} plus one (zero means not present). */
+    protected int[] _index = new int[INDEX_SIZE];
+
+    protected static final int INDEX_SIZE = 64;
+}
@@ -0,0 +1,297 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.entity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import react.Value;
+
+import playn.core.Clock;
+
+import tripleplay.util.Hud;
+
+/**
+ * Records how long each of a world's systems takes to update and paint, how many entities each
+ * system is processing, and how many entities are added, changed and removed every update. Timing
+ * statistics are computed over a rolling window of recent frames. Example usage:
+ *
+ * <pre>{@code
+ * Profiler prof = new Profiler(world, 120);
+ * prof.setEnabled(true);
+ * prof.addTo(hud);
+ * // ...then, before updating the HUD
+ * prof.updateHud();
+ * }</pre>
+ *
+ * <p>When a profiler is not enabled, the world's update and paint each incur only a single null
+ * check.</p>
+ */
+public class Profiler
+{
+    /** Statistics for a series of time samples, in milliseconds. */
+    public static class Timing {
+        /** The number of samples from which these statistics were computed. */
+        public final int samples;
+        /** The minimum, mean, maximum and 99th percentile sample. */
+        public final float min, avg, max, p99;
+
+        public Timing (int samples, float min, float avg, float max, float p99) {
+            this.samples = samples;
+            this.min = min;
+            this.avg = avg;
+            this.max = max;
+            this.p99 = p99;
+        }
+
+        @Override public String toString () {
+            return fmt(avg) + "/" + fmt(p99) + "ms";
+        }
+    }
+
+    /** Statistics for a single system. */
+    public static class SystemStats {
+        /** The system in question. */
+        public final System system;
+        /** Statistics for the system's update and paint. */
+        public final Timing update, paint;
+        /** The number of entities processed by the system on its most recent update. */
+        public final int entities;
+
+        public SystemStats (System system, Timing update, Timing paint, int entities) {
+            this.system = system;
+            this.update = update;
+            this.paint = paint;
+            this.entities = entities;
+        }
+
+        @Override public String toString () {
+            return "upd " + update + ", paint " + paint + ", ents " + entities;
+        }
+    }
+
+    /** A snapshot of a profiler's statistics. See {@link #snapshot}. */
+    public static class Snapshot {
+        /** Statistics for each system, in the order in which the systems are updated. */
+        public final List<SystemStats> systems;
+        /** Statistics for the world's entire update and paint. */
+        public final Timing update, paint;
+        /** The number of entities added, changed and removed on the most recent update. */
+        public final int added, changed, removed;
+        /** The maximum number of entities added, changed and removed on a single update since the
+         * profiler was enabled or reset. */
+        public final int peakAdded, peakChanged, peakRemoved;
+
+        public Snapshot (List<SystemStats> systems, Timing update, Timing paint, int[] queues) {
+            this.systems = Collections.unmodifiableList(systems);
+            this.update = update;
+            this.paint = paint;
+            this.added = queues[0];
+            this.changed = queues[1];
+            this.removed = queues[2];
+            this.peakAdded = queues[3];
+            this.peakChanged = queues[4];
+            this.peakRemoved = queues[5];
+        }
+    }
+
+    /** The world being profiled. */
+    public final World world;
+
+    /** The number of recent frames over which timing statistics are computed. */
+    public final int window;
+
+    /** Creates a profiler for {@code world}, which computes statistics over the most recent
+      * {@code window} frames. The profiler does nothing until it is enabled. */
+    public Profiler (World world, int window) {
+        if (window < 1) throw new IllegalArgumentException("Window must be at least one frame.");
+        this.world = world;
+        this.window = window;
+        _update = new Samples(window);
+        _paint = new Samples(window);
+    }
+
+    /** Enables or disables this profiler. Only one profiler can be enabled for a given world:
+      * enabling this profiler replaces any other. */
+    public void setEnabled (boolean enabled) {
+        if (enabled) world._profiler = this;
+        else if (world._profiler == this) world._profiler = null;
+    }
+
+    /** Returns whether this profiler is enabled. */
+    public boolean isEnabled () {
+        return world._profiler == this;
+    }
+
+    /** Discards all of the statistics recorded so far. */
+    public void reset () {
+        _update.clear();
+        _paint.clear();
+        for (Samples samples : _sysUpdate) if (samples != null) samples.clear();
+        for (Samples samples : _sysPaint) if (samples != null) samples.clear();
+        Arrays.fill(_queues, 0);
+    }
+
+    /** Computes and returns statistics for the frames recorded so far. */
+    public Snapshot snapshot () {
+        List<SystemStats> systems = new ArrayList<SystemStats>();
+        for (int ii = 0, ll = world._systems.size(); ii < ll; ii++) {
+            System sys = world._systems.get(ii);
+            Samples update = updateSamples(sys), paint = paintSamples(sys);
+            systems.add(new SystemStats(sys, update.timing(), paint.timing(), update.entities));
+        }
+        return new Snapshot(systems, _update.timing(), _paint.timing(), _queues.clone());
+    }
+
+    /** Adds rows to {@code hud} which display the statistics for this world's systems. Only the
+      * systems registered at the time of this call are displayed. Call {@link #updateHud} to
+      * update the displayed values. */
+    public void addTo (Hud hud) {
+        hud.add("Entity systems (avg/p99):", true);
+        _hudTotal = Value.create("");
+        hud.add("World:", _hudTotal);
+        _hudQueues = Value.create("");
+        hud.add("Add/chg/rem:", _hudQueues);
+        _hudSystems.clear();
+        _hudValues.clear();
+        for (int ii = 0, ll = world._systems.size(); ii < ll; ii++) {
+            System sys = world._systems.get(ii);
+            Value<String> value = Value.create("");
+            String name = sys.getClass().getSimpleName();
+            if (name.length() == 0) name = sys.getClass().getName();
+            hud.add(name + ":", value);
+            _hudSystems.add(sys);
+            _hudValues.add(value);
+        }
+    }
+
+    /** Updates the rows added to a HUD via {@link #addTo}. */
+    public void updateHud () {
+        if (_hudTotal == null) return;
+        Snapshot snap = snapshot();
+        _hudTotal.update("upd " + snap.update + ", paint " + snap.paint);
+        _hudQueues.update(snap.added + "/" + snap.changed + "/" + snap.removed + " (peak " +
+                          snap.peakAdded + "/" + snap.peakChanged + "/" + snap.peakRemoved + ")");
+        for (SystemStats stats : snap.systems) {
+            int idx = _hudSystems.indexOf(stats.system);
+            if (idx >= 0) _hudValues.get(idx).update(stats.toString());
+        }
+    }
+
+    /** Performs a profiled update of our world. See {@link World#update}. */
+    void update (Clock clock) {
+        long start = java.lang.System.nanoTime();
+        noteQueue(0, world.toAdd.size());
+        noteQueue(1, world.toChange.size());
+        noteQueue(2, world.toRemove.size());
+        world.processPending();
+
+        // create any needed sample buffers before we update (potentially in parallel)
+        ArrayList<System> systems = world._systems;
+        for (int ii = 0, ll = systems.size(); ii < ll; ii++) updateSamples(systems.get(ii));
+        if (world._taskPool == null) {
+            for (int ii = 0, ll = systems.size(); ii < ll; ii++) timeUpdate(systems.get(ii), clock);
+        } else world.updateStages(clock, true);
+
+        world.didUpdate();
+        _update.add(java.lang.System.nanoTime() - start, 0);
+    }
+
+    /** Updates {@code system}, recording the time taken. This may be called on any thread, but
+      * only one thread will update a given system at a time. */
+    void timeUpdate (System system, Clock clock) {
+        long start = java.lang.System.nanoTime();
+        system.update(clock);
+        _sysUpdate[system._id].add(java.lang.System.nanoTime() - start, system.entityCount());
+    }
+
+    /** Performs a profiled paint of our world. See {@link World#paint}. */
+    void paint (Clock clock) {
+        long start = java.lang.System.nanoTime();
+        ArrayList<System> systems = world._systems;
+        for (int ii = 0, ll = systems.size(); ii < ll; ii++) {
+            System sys = systems.get(ii);
+            Samples samples = paintSamples(sys);
+            long sstart = java.lang.System.nanoTime();
+            sys.paint(clock);
+            samples.add(java.lang.System.nanoTime() - sstart, sys.entityCount());
+        }
+        _paint.add(java.lang.System.nanoTime() - start, 0);
+    }
+
+    protected void noteQueue (int idx, int size) {
+        _queues[idx] = size;
+        _queues[idx+3] = Math.max(_queues[idx+3], size);
+    }
+
+    protected Samples updateSamples (System system) {
+        int id = system._id;
+        if (id >= _sysUpdate.length) _sysUpdate = grow(_sysUpdate, id);
+        Samples samples = _sysUpdate[id];
+        return (samples != null) ? samples : (_sysUpdate[id] = new Samples(window));
+    }
+
+    protected Samples paintSamples (System system) {
+        int id = system._id;
+        if (id >= _sysPaint.length) _sysPaint = grow(_sysPaint, id);
+        Samples samples = _sysPaint[id];
+        return (samples != null) ? samples : (_sysPaint[id] = new Samples(window));
+    }
+
+    protected static Samples[] grow (Samples[] samples, int id) {
+        return Arrays.copyOf(samples, Math.max(samples.length*2, id+1));
+    }
+
+    protected static String fmt (float millis) {
+        // avoid String.format, which GWT does not support
+        int hundredths = Math.round(millis * 100);
+        String frac = String.valueOf(hundredths % 100);
+        return (hundredths / 100) + "." + (frac.length() == 1 ? "0" + frac : frac);
+    }
+
+    /** A ring buffer of time samples. */
+    protected static class Samples {
+        public final long[] times;
+        public int count, next, entities;
+
+        public Samples (int window) {
+            times = new long[window];
+        }
+
+        public void add (long nanos, int entities) {
+            times[next] = nanos;
+            next = (next + 1) % times.length;
+            if (count < times.length) count++;
+            this.entities = entities;
+        }
+
+        public void clear () {
+            count = next = entities = 0;
+        }
+
+        public Timing timing () {
+            if (count == 0) return new Timing(0, 0, 0, 0, 0);
+            long[] sorted = Arrays.copyOf(times, count);
+            Arrays.sort(sorted);
+            long total = 0;
+            for (long time : sorted) total += time;
+            int p99 = Math.max((int)Math.ceil(count * 0.99) - 1, 0);
+            return new Timing(count, sorted[0] / 1e6f, total / (count * 1e6f),
+                              sorted[count-1] / 1e6f, sorted[p99] / 1e6f);
+        }
+    }
+
+    protected final Samples _update, _paint;
+    protected Samples[] _sysUpdate = new Samples[8], _sysPaint = new Samples[8];
+    // the last and peak number of entities added, changed and removed
+    protected final int[] _queues = new int[6];
+
+    protected Value<String> _hudTotal, _hudQueues;
+    protected final List<System> _hudSystems = new ArrayList<System>();
+    protected final List<Value<String>> _hudValues = new ArrayList<Value<String>>();
+}
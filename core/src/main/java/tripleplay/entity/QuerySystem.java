@@ -0,0 +1,32 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.entity;
+
+/**
+ * A system whose interest is defined entirely by which components an entity possesses. Such a
+ * system is interested in every entity that has all of its required components and none of its
+ * excluded components. Because the world knows exactly which components such a system depends
+ * upon, it only rechecks the system's interest in a changed entity when one of those components
+ * was added to or removed from the entity.
+ */
+public abstract class QuerySystem extends System
+{
+    /** Creates a new system and registers it with {@code world}.
+     * @param priority see {@link System#System(World,int)}.
+     * @param required the components an entity must have to be of interest to this system.
+     * @param excluded the components an entity must not have to be of interest to this system.
+     */
+    protected QuerySystem (World world, int priority, Component[] required,
+                           Component... excluded) {
+        super(world, priority, toMask(required), toMask(excluded));
+    }
+
+    /** Returns whether {@code entity} matches this system's query. The world does not call this
+     * method to determine this system's interest, so it cannot be overridden. */
+    @Override protected final boolean isInterested (Entity entity) {
+        return matches(entity);
+    }
+}
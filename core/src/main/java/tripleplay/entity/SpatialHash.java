@@ -0,0 +1,242 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.entity;
+
+import java.util.Arrays;
+
+/**
+ * Indexes entities by their position (obtained from an {@link Component.XY} component) in a
+ * uniform grid, for fast proximity queries. The grid is unbounded: its cells are hashed into a
+ * table of buckets which grows with the number of indexed entities. Each bucket is a linked list
+ * threaded through arrays indexed by entity id, so adding, removing and moving entities and
+ * querying the index generate no garbage.
+ *
+ * <p>The index is maintained incrementally, usually by a system whose active entities are the
+ * ones being indexed:</p>
+ *
+ * <pre>{@code
+ * @Override protected void wasAdded (Entity entity) {
+ *   super.wasAdded(entity);
+ *   hash.add(entity.id);
+ * }
+ * @Override protected void wasRemoved (Entity entity, int index) {
+ *   super.wasRemoved(entity, index);
+ *   hash.remove(entity.id);
+ * }
+ * @Override protected void update (Clock clock, Entities entities) {
+ *   hash.update(entities);
+ *   hash.forEachPair(radius, collider);
+ * }
+ * }</pre>
+ *
+ * <p>An entity is bucketed by its position at the time it was last added or updated. Queries
+ * test entities against their current positions, but an entity which has moved into a different
+ * cell since it was last updated may be missed. Cells should be about the size of the typical
+ * query radius.</p>
+ */
+public class SpatialHash
+{
+    /** Receives the pairs of entities enumerated by {@link #forEachPair}. */
+    public interface PairOp {
+        void apply (int entityA, int entityB);
+    }
+
+    /** The component from which entity positions are read. */
+    public final Component.XY pos;
+
+    /** The width and height of a grid cell. */
+    public final float cellSize;
+
+    /** Creates a spatial hash which indexes entities by {@code pos}, using square cells of the
+      * specified size. */
+    public SpatialHash (Component.XY pos, float cellSize) {
+        if (cellSize <= 0) throw new IllegalArgumentException("Cell size must be positive.");
+        this.pos = pos;
+        this.cellSize = cellSize;
+        _invCellSize = 1/cellSize;
+        Arrays.fill(_heads, -1);
+    }
+
+    /** Returns the number of entities in this index. */
+    public int size () {
+        return _members.size();
+    }
+
+    /** Returns whether entity {@code entityId} is in this index. */
+    public boolean contains (int entityId) {
+        return _members.contains(entityId);
+    }
+
+    /** Adds entity {@code entityId} to this index, at its current position. Does nothing if the
+      * entity is already in the index. */
+    public void add (int entityId) {
+        if (_members.contains(entityId)) return;
+        if (entityId >= _next.length) grow(entityId);
+        if (_members.size() == _heads.length) rehash(_heads.length*2);
+        _members.add(entityId);
+        link(entityId, cell(pos.getX(entityId)), cell(pos.getY(entityId)));
+    }
+
+    /** Removes entity {@code entityId} from this index. Does nothing if the entity is not in the
+      * index. */
+    public void remove (int entityId) {
+        if (_members.remove(entityId) >= 0) unlink(entityId);
+    }
+
+    /** Moves entity {@code entityId} to the cell containing its current position. This is cheap
+      * if the entity has not changed cells. The entity must be in the index. */
+    public void update (int entityId) {
+        int cx = cell(pos.getX(entityId)), cy = cell(pos.getY(entityId));
+        if (cx == _cellX[entityId] && cy == _cellY[entityId]) return;
+        unlink(entityId);
+        link(entityId, cx, cy);
+    }
+
+    /** {@link #update(int)}s all of the supplied entities, which must be in the index. */
+    public void update (System.Entities entities) {
+        for (int ii = 0, ll = entities.size(); ii < ll; ii++) update(entities.get(ii));
+    }
+
+    /** Removes all entities from this index. */
+    public void clear () {
+        _members.removeAll();
+        Arrays.fill(_heads, -1);
+    }
+
+    /** Adds to {@code results} the id of every entity whose position lies in the specified
+      * rectangle (inclusive of its edges). */
+    public void query (float x, float y, float width, float height, IntBag results) {
+        float maxX = x + width, maxY = y + height;
+        int cx0 = cell(x), cy0 = cell(y), cx1 = cell(maxX), cy1 = cell(maxY);
+        // if the rectangle covers more cells than we have entities, just check every entity
+        if ((long)(cx1-cx0+1) * (cy1-cy0+1) > _members.size()) {
+            for (int ii = 0, ll = _members.size(); ii < ll; ii++) {
+                int eid = _members.get(ii);
+                float ex = pos.getX(eid), ey = pos.getY(eid);
+                if (ex >= x && ex <= maxX && ey >= y && ey <= maxY) results.add(eid);
+            }
+            return;
+        }
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                for (int eid = _heads[bucket(cx, cy)]; eid >= 0; eid = _next[eid]) {
+                    if (_cellX[eid] != cx || _cellY[eid] != cy) continue;
+                    float ex = pos.getX(eid), ey = pos.getY(eid);
+                    if (ex >= x && ex <= maxX && ey >= y && ey <= maxY) results.add(eid);
+                }
+            }
+        }
+    }
+
+    /** Adds to {@code results} the id of every entity whose position lies within {@code radius}
+      * of {@code (x, y)}. */
+    public void queryRadius (float x, float y, float radius, IntBag results) {
+        float r2 = radius*radius;
+        int cx0 = cell(x-radius), cy0 = cell(y-radius), cx1 = cell(x+radius), cy1 = cell(y+radius);
+        if ((long)(cx1-cx0+1) * (cy1-cy0+1) > _members.size()) {
+            for (int ii = 0, ll = _members.size(); ii < ll; ii++) {
+                int eid = _members.get(ii);
+                float dx = pos.getX(eid) - x, dy = pos.getY(eid) - y;
+                if (dx*dx + dy*dy <= r2) results.add(eid);
+            }
+            return;
+        }
+        for (int cy = cy0; cy <= cy1; cy++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                for (int eid = _heads[bucket(cx, cy)]; eid >= 0; eid = _next[eid]) {
+                    if (_cellX[eid] != cx || _cellY[eid] != cy) continue;
+                    float dx = pos.getX(eid) - x, dy = pos.getY(eid) - y;
+                    if (dx*dx + dy*dy <= r2) results.add(eid);
+                }
+            }
+        }
+    }
+
+    /** Passes to {@code op} every pair of distinct entities whose positions lie within {@code
+      * radius} of one another. Each pair is reported exactly once. */
+    public void forEachPair (float radius, PairOp op) {
+        float r2 = radius*radius;
+        int reach = (int)Math.ceil(radius * _invCellSize);
+        for (int ii = 0, ll = _members.size(); ii < ll; ii++) {
+            int aid = _members.get(ii), acx = _cellX[aid], acy = _cellY[aid];
+            float ax = pos.getX(aid), ay = pos.getY(aid);
+
+            // entities in the same cell follow us in our bucket's list, or precede us (in which
+            // case they have already been paired with us)
+            for (int bid = _next[aid]; bid >= 0; bid = _next[bid]) {
+                if (_cellX[bid] != acx || _cellY[bid] != acy) continue;
+                float dx = pos.getX(bid) - ax, dy = pos.getY(bid) - ay;
+                if (dx*dx + dy*dy <= r2) op.apply(aid, bid);
+            }
+
+            // check the neighboring cells in the "forward" half of our neighborhood, so that the
+            // cells in the other half pair with us when we are their neighbor
+            for (int dcy = 0; dcy <= reach; dcy++) {
+                for (int dcx = (dcy == 0) ? 1 : -reach; dcx <= reach; dcx++) {
+                    int cx = acx+dcx, cy = acy+dcy;
+                    for (int bid = _heads[bucket(cx, cy)]; bid >= 0; bid = _next[bid]) {
+                        if (_cellX[bid] != cx || _cellY[bid] != cy) continue;
+                        float dx = pos.getX(bid) - ax, dy = pos.getY(bid) - ay;
+                        if (dx*dx + dy*dy <= r2) op.apply(aid, bid);
+                    }
+                }
+            }
+        }
+    }
+
+    protected int cell (float coord) {
+        return (int)Math.floor(coord * _invCellSize);
+    }
+
+    protected int bucket (int cx, int cy) {
+        return (cx * 73856093 ^ cy * 19349663) & (_heads.length-1);
+    }
+
+    protected void link (int eid, int cx, int cy) {
+        _cellX[eid] = cx;
+        _cellY[eid] = cy;
+        int bucket = bucket(cx, cy), next = _heads[bucket];
+        _next[eid] = next;
+        _prev[eid] = -1;
+        if (next >= 0) _prev[next] = eid;
+        _heads[bucket] = eid;
+    }
+
+    protected void unlink (int eid) {
+        int prev = _prev[eid], next = _next[eid];
+        if (prev >= 0) _next[prev] = next;
+        else _heads[bucket(_cellX[eid], _cellY[eid])] = next;
+        if (next >= 0) _prev[next] = prev;
+    }
+
+    protected void rehash (int buckets) {
+        _heads = new int[buckets];
+        Arrays.fill(_heads, -1);
+        for (int ii = 0, ll = _members.size(); ii < ll; ii++) {
+            int eid = _members.get(ii);
+            link(eid, _cellX[eid], _cellY[eid]);
+        }
+    }
+
+    protected void grow (int entityId) {
+        int length = Math.max(_next.length*2, entityId+1);
+        _next = Arrays.copyOf(_next, length);
+        _prev = Arrays.copyOf(_prev, length);
+        _cellX = Arrays.copyOf(_cellX, length);
+        _cellY = Arrays.copyOf(_cellY, length);
+    }
+
+    protected final float _invCellSize;
+    protected final IntSet _members = new IntSet();
+
+    // the first entity in each bucket, or -1
+    protected int[] _heads = new int[INIT_BUCKETS];
+    // the next and previous entity in each entity's bucket (or -1), and each entity's cell
+    protected int[] _next = new int[INIT_BUCKETS], _prev = new int[INIT_BUCKETS];
+    protected int[] _cellX = new int[INIT_BUCKETS], _cellY = new int[INIT_BUCKETS];
+
+    protected static final int INIT_BUCKETS = 64;
+}
@@ -7,6 +7,9 @@ package tripleplay.entity;
 
 import playn.core.Clock;
 
+import tripleplay.util.BitVec;
+import tripleplay.util.TaskPool;
+
 /**
  * Handles a single concern in an entity-based game. That might be processing collisions, or
  * updating entity's logical positions, or regenerating health, etc. A system operates on all
@@ -23,6 +26,17 @@ public abstract class System
         int get (int index);
     }
 
+    /** Processes a range of a system's active entities. See {@link System#forEachParallel}. */
+    public interface RangeOp {
+        /**
+         * Processes {@code entities.get(from)} through {@code entities.get(to-1)}.
+         *
+         * @param chunk the index of this range. Ranges are numbered in order, from zero, and
+         * together they cover every entity exactly once.
+         */
+        void apply (Entities entities, int chunk, int from, int to);
+    }
+
     /** The world of which this system is a part. */
     public final World world;
 
@@ -34,11 +48,31 @@ public abstract class System
         _enabled = enabled;
     }
 
+    /** Configures this system to keep its active entities sorted by id. Component data is stored
+     * in blocks indexed by entity id, so processing entities in id order walks through that data
+     * linearly rather than hopping randomly between blocks, which makes much better use of the
+     * cache when a system has many entities. The active set is sorted (if it has changed) just
+     * before {@link #update(Clock,Entities)} and {@link #paint(Clock,Entities)} are called.
+     *
+     * <p>Note that sorting moves entities around in the active set, so a system which sorts its
+     * entities should not maintain data in parallel with the active set (see {@link
+     * #wasRemoved}).</p>
+     */
+    public void setSorted (boolean sorted) {
+        _sorted = sorted;
+        _unsorted = sorted;
+    }
+
     /** Returns the number of active entities in this system. */
     public final int entityCount () {
         return _active.size();
     }
 
+    /** Returns whether the entity with id {@code entityId} is in this system's active set. */
+    public final boolean isActive (int entityId) {
+        return _active.contains(entityId);
+    }
+
     /** Returns the id of the {@code ii}th active entity in this system. */
     public final int entityId (int ii) {
         return _active.get(ii);
@@ -52,11 +86,92 @@ public abstract class System
      * world.
      */
     protected System (World world, int priority) {
+        this(world, priority, null, null);
+    }
+
+    /** Creates a system whose interest is defined by a component query. See {@link
+     * QuerySystem}. */
+    System (World world, int priority, BitVec required, BitVec excluded) {
         this.world = world;
         this.priority = priority;
+        _required = required;
+        _excluded = excluded;
         _id = world.register(this);
     }
 
+    /**
+     * Declares that this system's {@link #update(Clock,Entities)} reads the supplied components.
+     * When the world is configured with a {@link World#setTaskPool task pool}, systems which have
+     * declared the components they read and write may be updated in parallel with other systems
+     * whose accesses do not conflict. A system which makes no declarations is never run in
+     * parallel with any other system.
+     *
+     * <p>A system which declares its accesses must touch no other shared state during its update,
+     * and in particular must not create, enable, disable or dispose entities, or add or remove
+     * components. Systems which need to do those things should not declare their accesses.</p>
+     */
+    protected final void reads (Component... comps) {
+        declareAccess();
+        for (Component comp : comps) _reads.set(comp.id);
+    }
+
+    /** Declares that this system's {@link #update(Clock,Entities)} writes the supplied components.
+     * See {@link #reads}. */
+    protected final void writes (Component... comps) {
+        declareAccess();
+        for (Component comp : comps) _writes.set(comp.id);
+    }
+
+    /** Splits {@code entities} into chunks sized to keep all of the world's task pool busy, and
+     * applies {@code op} to them in parallel. See {@link #forEachParallel(Entities,int,RangeOp)}.
+     */
+    protected final int forEachParallel (Entities entities, RangeOp op) {
+        return forEachParallel(entities, 0, op);
+    }
+
+    /**
+     * Splits {@code entities} into chunks and applies {@code op} to them in parallel using the
+     * world's {@link World#taskPool}. This is intended for data-parallel systems whose per-entity
+     * work reads and writes only that entity's component data; {@code op} must not touch any other
+     * shared state (nor add, change or remove entities). Returns once all chunks are processed.
+     *
+     * @param chunkSize the number of entities in each chunk (the last chunk may be smaller). A
+     * fixed chunk size means that the chunking depends only on the number of entities, not on the
+     * number of available threads, so any per-chunk results (sums, etc.) will be bit-identical from
+     * one run to the next, which is necessary for deterministic replays. If zero, a chunk size is
+     * chosen based on the task pool's parallelism.
+     * @return the number of chunks into which the entities were split.
+     */
+    protected final int forEachParallel (Entities entities, int chunkSize, RangeOp op) {
+        TaskPool pool = world.taskPool();
+        int size = entities.size();
+        if (chunkSize <= 0) {
+            int chunks = pool.parallelism() * CHUNKS_PER_THREAD;
+            chunkSize = Math.max(MIN_CHUNK, (size + chunks - 1) / chunks);
+        }
+        int chunks = (size + chunkSize - 1) / chunkSize;
+        if (chunks == 1) op.apply(entities, 0, 0, size);
+        else if (chunks > 1) {
+            if (_chunks.length < chunks) {
+                ChunkTask[] ctasks = new ChunkTask[Math.max(chunks, _chunks.length*2)];
+                java.lang.System.arraycopy(_chunks, 0, ctasks, 0, _chunks.length);
+                for (int ii = _chunks.length; ii < ctasks.length; ii++) {
+                    ctasks[ii] = new ChunkTask();
+                }
+                _chunks = ctasks;
+            }
+            for (int ii = 0, from = 0; ii < chunks; ii++, from += chunkSize) {
+                _chunks[ii].init(entities, op, ii, from, Math.min(from + chunkSize, size));
+            }
+            try {
+                pool.invokeAll(_chunks, chunks);
+            } finally {
+                for (int ii = 0; ii < chunks; ii++) _chunks[ii].init(null, null, 0, 0, 0);
+            }
+        }
+        return chunks;
+    }
+
     /** Called when an entity is added to our world (or an already added entity is changed) which
      * matches this system's criteria. This entity will subsequently be processed by this system
      * until it is removed from the world or no longer matches our criteria.
@@ -99,16 +214,20 @@ public abstract class System
      * accompanied by a call to {@link Entity#didChange} so that all systems may be rechecked for
      * interest in the entity. Note that {@code didChange} is called automatically when components
      * are added to or removed from an entity.
+     *
+     * <p>A system whose interest depends only on which components an entity has should extend
+     * {@link QuerySystem} instead, which lets the world skip rechecking its interest when
+     * unrelated components change.</p>
      */
     protected abstract boolean isInterested (Entity entity);
 
     void entityAdded (Entity entity) {
-        if (isInterested(entity)) addEntity(entity);
+        if (interested(entity)) addEntity(entity);
     }
 
     void entityChanged (Entity entity) {
         boolean wasAdded = entity.systems.isSet(_id);
-        boolean haveInterest = isInterested(entity);
+        boolean haveInterest = interested(entity);
         if (haveInterest && !wasAdded) addEntity(entity);
         else if (!haveInterest && wasAdded) removeEntity(entity);
     }
@@ -119,36 +238,120 @@ public abstract class System
 
     void update (Clock clock) {
         if (!_enabled) return;
+        if (_unsorted) sortActive();
         update(clock, _active);
     }
 
     void paint (Clock clock) {
         if (!_enabled) return;
+        if (_unsorted) sortActive();
         paint(clock, _active);
     }
 
+    int trim () {
+        return _active.trim();
+    }
+
+    private void sortActive () {
+        _active.sort();
+        _unsorted = false;
+    }
+
+    /** Returns true if this system may not be updated in parallel with {@code other}. */
+    boolean conflictsWith (System other) {
+        if (_writes == null || other._writes == null) return true;
+        return _writes.intersects(other._writes) || _writes.intersects(other._reads) ||
+            _reads.intersects(other._writes);
+    }
+
+    private void declareAccess () {
+        if (_writes == null) {
+            _reads = new BitVec(1);
+            _writes = new BitVec(1);
+        }
+        world.invalidateSchedule();
+    }
+
+    private boolean interested (Entity entity) {
+        return (_required == null) ? isInterested(entity) : matches(entity);
+    }
+
+    boolean matches (Entity entity) {
+        return entity.comps.containsAll(_required) &&
+            !entity.comps.intersects(_excluded);
+    }
+
+    static BitVec toMask (Component[] comps) {
+        BitVec mask = new BitVec(1);
+        if (comps != null) for (Component comp : comps) mask.set(comp.id);
+        return mask;
+    }
+
     private void addEntity (Entity entity) {
         _active.add(entity.id);
+        _unsorted = _sorted;
         entity.systems.set(_id);
         wasAdded(entity);
     }
 
     private void removeEntity (Entity entity) {
-        // TODO: this is O(N), would be nice if it was O(log N) or O(1)
         int idx = _active.remove(entity.id);
+        _unsorted = _sorted;
         entity.systems.clear(_id);
         wasRemoved(entity, idx);
     }
 
+    /** Applies a {@link RangeOp} to a single chunk of entities. */
+    private static final class ChunkTask implements Runnable {
+        public void init (Entities entities, RangeOp op, int chunk, int from, int to) {
+            _entities = entities;
+            _op = op;
+            _chunk = chunk;
+            _from = from;
+            _to = to;
+        }
+        @Override public void run () {
+            _op.apply(_entities, _chunk, _from, _to);
+        }
+        private Entities _entities;
+        private RangeOp _op;
+        private int _chunk, _from, _to;
+    }
+
     /** This system's priority with respect to other systems. See {@link #System}. */
     final int priority;
 
-    /** Our active entities. */
-    protected final IntBag _active = new IntBag();
+    /** Our active entities. This is indexed by entity id, so membership checks and removals are
+     * O(1) regardless of the number of active entities. */
+    protected final IntSet _active = new IntSet();
 
     /** This system's unique id (used in bit masks). */
-    private final int _id;
+    final int _id;
+
+    /** This system's position in the world's priority ordered list of systems. */
+    int _order;
+
+    /** The components an entity must have, and must not have, to be of interest to this system.
+     * These are null unless this system is a {@link QuerySystem}. */
+    final BitVec _required, _excluded;
+
+    /** The components read and written by this system's update, or null if undeclared. */
+    private BitVec _reads, _writes;
 
     /** Whether or not this system is enabled. */
     private boolean _enabled = true;
+
+    /** Whether this system keeps its active set sorted, and whether it needs resorting. */
+    private boolean _sorted, _unsorted;
+
+    /** Tasks used by {@link #forEachParallel}, reused from tick to tick. */
+    private ChunkTask[] _chunks = new ChunkTask[0];
+
+    /** The minimum number of entities processed by a single chunk when the chunk size is chosen
+     * automatically. Below this the cost of scheduling a chunk outweighs the benefit. */
+    private static final int MIN_CHUNK = 256;
+
+    /** The number of chunks per thread when the chunk size is chosen automatically. Using a few
+     * chunks per thread helps smooth out uneven per-entity costs. */
+    private static final int CHUNKS_PER_THREAD = 4;
 }
@@ -5,8 +5,11 @@
 
 package tripleplay.entity;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 
 import react.Closeable;
 import react.Signal;
@@ -16,6 +19,8 @@ import playn.core.Clock;
 
 import tripleplay.util.Bag;
 import tripleplay.util.BitVec;
+import tripleplay.util.FixedStep;
+import tripleplay.util.TaskPool;
 
 /**
  * A collection of entities and systems. A world is completely self-contained, so it would be
@@ -49,6 +54,23 @@ public class World implements Iterable<Entity>
             paint.connect(new Slot<Clock>() { public void onEmit (Clock clk) { paint(clk); }}));
     }
 
+    /** Connects this world to the supplied {@code frame} signal such that it is updated at a
+      * fixed rate and painted once per frame, with {@link Clock#alpha} indicating how far the
+      * frame lies between the last update and the next. Systems can use the alpha to blend
+      * between an entity's previous and current state (see {@link Component.XY#lerpX}). See
+      * {@link FixedStep} for details.
+      *
+      * @param step the duration of a single update, in milliseconds.
+      * @param maxSteps the maximum number of updates to perform in one frame. Elapsed time beyond
+      * that is discarded to keep a slow update from making every subsequent frame slower.
+      * @return an object that can be used to disconnect from {@code frame}.
+      */
+    public Closeable connectFixed (Signal<Clock> frame, int step, int maxSteps) {
+        FixedStep fixed = new FixedStep(step, maxSteps);
+        return Closeable.Util.join(frame.connect(fixed.onFrame),
+                                   connect(fixed.update, fixed.paint));
+    }
+
     /** Creates and returns an entity. The entity may actually be obtained from a pool of free
       * entities to avoid unnecessary garbage generation.
       *
@@ -58,11 +80,23 @@ public class World implements Iterable<Entity>
       */
     public Entity create (boolean enabled) {
         Entity e;
-        if (_ids.isEmpty()) {
+        if (_idsHead == _ids.size()) {
             e = create(genEntityId());
         } else {
-            e = _entities[_ids.removeLast()];
-            e.reset();
+            // recycle ids in the order in which they were freed, so that an entity which is
+            // created and disposed every frame does not keep reusing (and aging) the same id
+            int id = _ids.get(_idsHead++);
+            int queued = _ids.size();
+            if (_idsHead == queued || _idsHead >= MIN_IDS_COMPACT && _idsHead*2 >= queued) {
+                compactIds();
+            }
+            e = _entities[id];
+            // the pooled entity may have been released by trim()
+            if (e == null) e = create(id);
+            else {
+                e.reset();
+                noteCreated();
+            }
         }
         if (enabled) e.setEnabled(true);
         return e;
@@ -86,6 +120,29 @@ public class World implements Iterable<Entity>
         return ent;
     }
 
+    /** Returns the id of the entity referenced by {@code handle}. See {@link Entity#handle}. */
+    public static int handleId (long handle) {
+        return (int)handle;
+    }
+
+    /** Returns whether {@code handle} refers to an entity which has not been disposed. Once an
+      * entity is disposed, this returns false for all handles obtained from it, even after its id
+      * is reused by a new entity. See {@link Entity#handle}. */
+    public boolean isAlive (long handle) {
+        int id = (int)handle;
+        if (id < 0 || id >= _entities.length || _generations[id] != (int)(handle >>> 32)) {
+            return false;
+        }
+        Entity e = _entities[id];
+        return e != null && !e.isDisposed();
+    }
+
+    /** Returns the entity referenced by {@code handle}, or null if that entity has been disposed.
+      * See {@link #isAlive}. */
+    public Entity entityFor (long handle) {
+        return isAlive(handle) ? _entities[(int)handle] : null;
+    }
+
     /** Returns the entity with the specified id. Note: this method is optimized for speed, which
      * means that passing an invalid/unused entity id to this method may return a destroyed entity
      * or it may throw an exception.
@@ -119,8 +176,21 @@ public class World implements Iterable<Entity>
     }
 
     /** Updates all of the {@link System}s in this world. The systems will likely in turn update
-      * the components of registered {@link Entity}s. */
+      * the components of registered {@link Entity}s. Once all systems have been updated, the
+      * commands recorded in this world's {@link CommandBuffer}s are applied. */
     public void update (Clock clock) {
+        if (_profiler != null) {
+            _profiler.update(clock);
+            return;
+        }
+        processPending();
+        updateSystems(clock);
+        didUpdate();
+    }
+
+    /** Initializes newly registered systems and processes pending entity additions, changes and
+      * removals. Called at the start of every update. */
+    protected void processPending () {
         // init any to-be-initted systems (before we add to-be-added entities)
         for (int ii = _toInit.size()-1; ii >= 0; ii--) {
             System sys = _toInit.removeLast();
@@ -142,6 +212,7 @@ public class World implements Iterable<Entity>
             // otherwise a system half-way through the list could change things and the systems in
             // the first half of the list would no longer be aware of the entity's real state
             entity.noteAdded();
+            entity.changedComps.clear();
             for (int ss = 0, ll = _systems.size(); ss < ll; ss++) {
                 _systems.get(ss).entityAdded(entity);
             }
@@ -157,9 +228,7 @@ public class World implements Iterable<Entity>
             // through the list could change things and the systems in the first half of the list
             // would no longer be aware of the entity's real state
             entity.clearChanging();
-            for (int ss = 0, ll = _systems.size(); ss < ll; ss++) {
-                _systems.get(ss).entityChanged(entity);
-            }
+            notifyChanged(entity);
             entityChanged.emit(entity);
         }
 
@@ -176,16 +245,279 @@ public class World implements Iterable<Entity>
                     if (entity.comps.isSet(cc)) _comps.get(cc).remove(entity);
                 }
                 _ids.add(entity.id);
+                _generations[entity.id]++;
+                _live--;
+            }
+        }
+
+    }
+
+    /** Updates all of our systems, in parallel stages if we have a task pool. */
+    protected void updateSystems (Clock clock) {
+        if (_taskPool == null) {
+            for (int ii = 0, ll = _systems.size(); ii < ll; ii++) _systems.get(ii).update(clock);
+        } else updateStages(clock, false);
+    }
+
+    /** Updates all of our systems in parallel stages via our task pool.
+      * @param timed whether to use the tasks which time each system's update via our profiler. */
+    protected void updateStages (Clock clock, boolean timed) {
+        if (_stages == null) _stages = schedule();
+        _clock = clock;
+        for (int ii = 0, ll = _stages.size(); ii < ll; ii++) {
+            Stage stage = _stages.get(ii);
+            Runnable[] tasks = timed ? stage.timedTasks : stage.tasks;
+            if (stage.count == 1) tasks[0].run();
+            else _taskPool.invokeAll(tasks, stage.count);
+        }
+        _clock = null;
+    }
+
+    /** Applies our command buffers and trims our storage if needed. Called at the end of every
+      * update. */
+    protected void didUpdate () {
+        // apply any structural changes recorded by systems during their update
+        for (int ii = 0; ii < _buffers.size(); ii++) _buffers.get(ii).apply();
+
+        // trim our storage if we're configured to do so and have shrunk substantially
+        if (_autoTrimInterval > 0 && ++_ticksSinceTrim >= _autoTrimInterval) {
+            _ticksSinceTrim = 0;
+            if (_live < _peakLive/2) trim();
+        }
+    }
+
+    /**
+     * Releases storage that is no longer needed. This frees component blocks in which no entity
+     * has the component in question, releases pooled entities, discards unused entity ids above
+     * the highest id in use, and shrinks the arrays used to index all of the above. The world only
+     * ever grows its storage as entities are created, so after a large but transient increase in
+     * the number of entities (a big wave of enemies, say), this can return a lot of memory.
+     *
+     * <p>This must not be called while the world is being updated or painted.</p>
+     *
+     * @return the approximate number of bytes released.
+     */
+    public int trim () {
+        compactIds();
+        // note which ids are in the free pool
+        BitVec pooled = new BitVec(_entities.length/32+1);
+        for (int ii = 0, ll = _ids.size(); ii < ll; ii++) pooled.set(_ids.get(ii));
+
+        // determine which component blocks are in use and the highest id in use
+        int ccount = _comps.size(), lastId = 0;
+        BitVec[] used = new BitVec[ccount];
+        for (int cc = 0; cc < ccount; cc++) used[cc] = new BitVec(1);
+        for (int id = 0, ll = _entities.length; id < ll; id++) {
+            Entity e = _entities[id];
+            if (e == null || pooled.isSet(id)) continue;
+            lastId = id;
+            BitVec comps = e.comps;
+            for (int cc = comps.nextSetBit(0); cc >= 0; cc = comps.nextSetBit(cc+1)) {
+                used[cc].set(id / Component.BLOCK);
             }
         }
 
-        // and finally update all of our systems
-        for (int ii = 0, ll = _systems.size(); ii < ll; ii++) _systems.get(ii).update(clock);
+        int freed = 0;
+        for (int cc = 0; cc < ccount; cc++) freed += _comps.get(cc).trim(used[cc]);
+        for (int ii = 0, ll = _systems.size(); ii < ll; ii++) freed += _systems.get(ii).trim();
+
+        // release our pooled entities, and the ids above the highest id in use
+        for (int ii = _ids.size()-1; ii >= 0; ii--) {
+            int id = _ids.get(ii);
+            if (_entities[id] != null) {
+                _entities[id] = null;
+                freed += ENTITY_BYTES;
+            }
+            if (id > lastId) _ids.removeAt(ii);
+        }
+        _nextEntityId = lastId+1;
+        int length = ENTITIES_SIZE;
+        while (length < _nextEntityId) length *= 2;
+        if (length < _entities.length) {
+            freed += (_entities.length - length) * Component.REF_BYTES;
+            Entity[] entities = new Entity[length];
+            java.lang.System.arraycopy(_entities, 0, entities, 0, length);
+            _entities = entities;
+        }
+        // the generations of the ids we discard are not needed as long as any of those ids which
+        // is reused starts out at a generation no older than theirs
+        if (length < _generations.length) {
+            for (int id = length, ll = _generations.length; id < ll; id++) {
+                _trimmedGeneration = Math.max(_trimmedGeneration, _generations[id]);
+            }
+            freed += (_generations.length - length) * 4;
+            _generations = Arrays.copyOf(_generations, length);
+        }
+
+        _peakLive = _live;
+        return freed;
+    }
+
+    /**
+     * Writes a snapshot of this world's entities to {@code buf}: each entity's state and
+     * component membership, the pool of free entity ids, and the values of all components. The
+     * values of {@link Component.Generic} components are only included if the component was
+     * created with a {@link Component.Generic.Codec}. Component values are written in bulk, a
+     * block at a time, and no per-entity objects are created, so a snapshot of thousands of
+     * entities is cheap enough to take every frame (for rollback networking, say).
+     *
+     * <p>The snapshot can be restored via {@link #readSnapshot}, into this world or into any
+     * world with the same components (created in the same order). {@code buf} must have enough
+     * space for the snapshot, otherwise {@link java.nio.BufferOverflowException} is thrown. This
+     * must not be called while the world is being updated or painted.</p>
+     */
+    public void writeSnapshot (ByteBuffer buf) {
+        compactIds();
+        // note which disposed entities are still waiting to be removed
+        BitVec pending = new BitVec(1);
+        for (int ii = 0, ll = toRemove.size(); ii < ll; ii++) pending.set(toRemove.get(ii).id);
+
+        int ccount = _comps.size(), words = (ccount+31)/32;
+        buf.putInt(SNAPSHOT_MAGIC);
+        buf.putInt(ccount);
+        buf.putInt(_nextEntityId);
+        for (int id = 1; id < _nextEntityId; id++) {
+            buf.putInt(_generations[id]);
+            Entity e = _entities[id];
+            byte state;
+            if (e == null) state = SNAP_FREE;
+            else if (e.isDisposed()) state = pending.isSet(id) ? SNAP_DISPOSED : SNAP_FREE;
+            else state = ((e._flags & Entity.ENABLED) != 0) ? SNAP_ENABLED : SNAP_DISABLED;
+            buf.put(state);
+            if (state == SNAP_FREE) continue;
+            for (int ww = 0; ww < words; ww++) buf.putInt(e.comps.word(ww));
+        }
+        buf.putInt(_ids.size());
+        for (int ii = 0, ll = _ids.size(); ii < ll; ii++) buf.putInt(_ids.get(ii));
+        for (int cc = 0; cc < ccount; cc++) _comps.get(cc).write(buf);
+    }
+
+    /**
+     * Replaces this world's entities with those in a snapshot written by {@link #writeSnapshot}.
+     * All existing entities are first removed from their systems (and {@link #entityRemoved} is
+     * emitted for them). The entities in the snapshot then have their ids, handles, components and
+     * component values restored, and those that were enabled are queued to be added to the
+     * world's systems on the next update, in order of increasing id.
+     *
+     * <p>The values of {@link Component.Generic} components which have no codec are left as they
+     * are. Entities with ids beyond those in the snapshot are discarded, and their generations
+     * are advanced so that handles to them are no longer alive. This must not be called while the
+     * world is being updated or painted.</p>
+     *
+     * @throws IllegalArgumentException if {@code buf} does not contain a snapshot, or contains a
+     * snapshot of a world with different components.
+     */
+    public void readSnapshot (ByteBuffer buf) {
+        if (buf.getInt() != SNAPSHOT_MAGIC) throw new IllegalArgumentException(
+            "Buffer does not contain a world snapshot.");
+        int ccount = buf.getInt(), words = (ccount+31)/32;
+        if (ccount != _comps.size()) throw new IllegalArgumentException(
+            "Snapshot has " + ccount + " components, but world has " + _comps.size() + ".");
+
+        // remove all of our current entities from their systems
+        for (int id = 0, ll = _entities.length; id < ll; id++) {
+            Entity e = _entities[id];
+            if (e == null || e.systems.isEmpty()) continue;
+            for (int ss = 0, sl = _systems.size(); ss < sl; ss++) _systems.get(ss).entityRemoved(e);
+            entityRemoved.emit(e);
+        }
+        toAdd.removeAll();
+        toChange.removeAll();
+        toRemove.removeAll();
+
+        int count = buf.getInt();
+        if (count > _entities.length) {
+            Entity[] entities = new Entity[count];
+            java.lang.System.arraycopy(_entities, 0, entities, 0, _entities.length);
+            _entities = entities;
+        }
+        if (count > _generations.length) {
+            int[] generations = new int[count];
+            java.lang.System.arraycopy(_generations, 0, generations, 0, _generations.length);
+            _generations = generations;
+        }
+        for (int id = count, ll = _entities.length; id < ll; id++) {
+            if (_entities[id] == null) continue;
+            _entities[id] = null;
+            _generations[id]++;
+        }
+
+        _live = 0;
+        for (int id = 1; id < count; id++) {
+            _generations[id] = buf.getInt();
+            byte state = buf.get();
+            Entity e = _entities[id];
+            if (state == SNAP_FREE) {
+                // leave pooled entities in the same state in which they are returned to the pool
+                if (e != null) {
+                    e.reset();
+                    e._flags = Entity.DISPOSED;
+                    e.comps.clear();
+                }
+                continue;
+            }
+            if (e == null) e = _entities[id] = new Entity(this, id);
+            else e.reset();
+            for (int ww = 0; ww < words; ww++) e.comps.setWord(ww, buf.getInt());
+            _live++;
+            if (state == SNAP_ENABLED) e._flags = Entity.ENABLED;
+            else if (state == SNAP_DISPOSED) {
+                // this entity will have its components removed and be pooled on the next update
+                e._flags = Entity.DISPOSED;
+                toRemove.add(e);
+            }
+        }
+        // toAdd is processed from the end, so we add in reverse order so that systems see the
+        // entities in order of increasing id
+        for (int id = count-1; id > 0; id--) {
+            Entity e = _entities[id];
+            if (e != null && e._flags == Entity.ENABLED) toAdd.add(e);
+        }
+        _nextEntityId = count;
+        if (_live > _peakLive) _peakLive = _live;
+
+        _ids.removeAll();
+        _idsHead = 0;
+        for (int ii = 0, ll = buf.getInt(); ii < ll; ii++) _ids.add(buf.getInt());
+        for (int cc = 0; cc < ccount; cc++) _comps.get(cc).read(buf);
+    }
+
+    /** Configures this world to automatically {@link #trim} itself. Every {@code interval}
+      * updates, if the number of live entities has fallen below half of its peak since the last
+      * trim, the world is trimmed.
+      *
+      * @param interval the number of updates between checks, or zero to disable automatic
+      * trimming (the default).
+      */
+    public void setAutoTrim (int interval) {
+        _autoTrimInterval = interval;
+        _ticksSinceTrim = 0;
+    }
+
+    /** Configures this world to update its systems via {@code pool}. Systems which have declared
+      * the components they read and write (see {@link System#reads}) will be updated in parallel
+      * with other systems whose accesses do not conflict. Systems whose accesses conflict are
+      * always updated in priority order, and systems which have not declared their accesses are
+      * updated by themselves. All systems will have completed their update before this world's
+      * {@link #update} returns (and thus before {@link #paint} is called).
+      *
+      * @param pool the pool to use, or null to update all systems serially on the calling thread
+      * (the default).
+      */
+    public void setTaskPool (TaskPool pool) {
+        _taskPool = pool;
+    }
+
+    /** Returns the task pool configured via {@link #setTaskPool}, or {@link TaskPool#SERIAL} if
+      * none has been configured. */
+    public TaskPool taskPool () {
+        return (_taskPool == null) ? TaskPool.SERIAL : _taskPool;
     }
 
     /** Paints all of the {@link System}s in this world. */
     public void paint (Clock clock) {
-        for (int ii = 0, ll = _systems.size(); ii < ll; ii++) _systems.get(ii).paint(clock);
+        if (_profiler != null) _profiler.paint(clock);
+        else for (int ii = 0, ll = _systems.size(); ii < ll; ii++) _systems.get(ii).paint(clock);
     }
 
     // from interface Iterable<Entity>
@@ -205,10 +537,26 @@ public class World implements Iterable<Entity>
             }
         }
         _systems.add(idx, system);
+        for (int ii = idx, ll = _systems.size(); ii < ll; ii++) _systems.get(ii)._order = ii;
         _toInit.add(system); // tell it about existing entities on the next update
+        _stages = null;
+
+        // index query systems by the components they depend upon; other systems must be checked
+        // every time an entity changes
+        if (system._required == null) _unindexed.add(system);
+        else {
+            indexSystem(system, system._required);
+            indexSystem(system, system._excluded);
+        }
+        if (_changed.length < _systems.size()) _changed = new System[_systems.size()*2];
         return _systems.size()-1;
     }
 
+    /** Notes that our systems or their declared accesses have changed. */
+    void invalidateSchedule () {
+        _stages = null;
+    }
+
     /** Registers {@code component} with this world.
      * @return a unique index assigned to the component for use in bitmasks.
      */
@@ -217,6 +565,16 @@ public class World implements Iterable<Entity>
         return _comps.size()-1;
     }
 
+    /** Registers {@code buffer} with this world, to be applied after every update. */
+    void register (CommandBuffer buffer) {
+        _buffers.add(buffer);
+    }
+
+    /** Unregisters {@code buffer} from this world, so that it is no longer applied. */
+    void unregister (CommandBuffer buffer) {
+        _buffers.remove(buffer);
+    }
+
     // Entity will add itself to the appropriate set as needed
     final Bag<Entity> toAdd = Bag.create();
     final Bag<Entity> toChange = Bag.create();
@@ -228,14 +586,125 @@ public class World implements Iterable<Entity>
 
     protected Entity create (int id) {
         if (_entities.length <= id) {
-            Entity[] entities = new Entity[_entities.length*2];
+            Entity[] entities = new Entity[Math.max(_entities.length*2, id+1)];
             java.lang.System.arraycopy(_entities, 0, entities, 0, _entities.length);
             _entities = entities;
         }
+        if (_generations.length <= id) {
+            int olength = _generations.length;
+            _generations = Arrays.copyOf(_generations, Math.max(olength*2, id+1));
+            Arrays.fill(_generations, olength, _generations.length, _trimmedGeneration);
+        }
         assert _entities[id] == null : "Entity already exists with id " + id;
+        noteCreated();
         return _entities[id] = new Entity(this, id);
     }
 
+    /** Discards the ids at the front of our free id queue that have already been reused. */
+    protected void compactIds () {
+        _ids.removeFirst(_idsHead);
+        _idsHead = 0;
+    }
+
+    protected void noteCreated () {
+        _live++;
+        if (_live > _peakLive) _peakLive = _live;
+    }
+
+    /** Notifies the systems that might care that {@code entity} has changed. Systems that declare
+      * their interest via a component query are only notified if a component in their query was
+      * added to or removed from the entity since it was last processed. */
+    protected void notifyChanged (Entity entity) {
+        System[] changed = _changed;
+        int count = 0;
+        for (int ii = 0, ll = _unindexed.size(); ii < ll; ii++) {
+            System sys = _unindexed.get(ii);
+            _notified.set(sys._id);
+            changed[count++] = sys;
+        }
+        BitVec comps = entity.changedComps;
+        for (int cc = comps.nextSetBit(0); cc >= 0; cc = comps.nextSetBit(cc+1)) {
+            if (cc >= _compSystems.size()) break;
+            Bag<System> systems = _compSystems.get(cc);
+            if (systems == null) continue;
+            for (int ii = 0, ll = systems.size(); ii < ll; ii++) {
+                System sys = systems.get(ii);
+                if (_notified.isSet(sys._id)) continue;
+                _notified.set(sys._id);
+                changed[count++] = sys;
+            }
+        }
+        comps.clear();
+
+        // notify the systems in priority order (they're almost always already sorted, or nearly
+        // so, so an insertion sort is the right tool here)
+        for (int ii = 1; ii < count; ii++) {
+            System sys = changed[ii];
+            int jj = ii-1;
+            for (; jj >= 0 && changed[jj]._order > sys._order; jj--) changed[jj+1] = changed[jj];
+            changed[jj+1] = sys;
+        }
+        for (int ii = 0; ii < count; ii++) {
+            System sys = changed[ii];
+            changed[ii] = null;
+            _notified.clear(sys._id);
+            sys.entityChanged(entity);
+        }
+    }
+
+    protected void indexSystem (System system, BitVec comps) {
+        for (int cc = comps.nextSetBit(0); cc >= 0; cc = comps.nextSetBit(cc+1)) {
+            while (_compSystems.size() <= cc) _compSystems.add(null);
+            Bag<System> systems = _compSystems.get(cc);
+            if (systems == null) _compSystems.set(cc, systems = Bag.create(4));
+            if (!systems.contains(system)) systems.add(system);
+        }
+    }
+
+    /** A set of systems that may be updated in parallel. */
+    protected static final class Stage {
+        public System[] systems = new System[4];
+        public Runnable[] tasks = new Runnable[4], timedTasks = new Runnable[4];
+        public int count;
+
+        public void add (System system, Runnable task, Runnable timedTask) {
+            if (count == systems.length) {
+                systems = Arrays.copyOf(systems, count*2);
+                tasks = Arrays.copyOf(tasks, count*2);
+                timedTasks = Arrays.copyOf(timedTasks, count*2);
+            }
+            systems[count] = system;
+            tasks[count] = task;
+            timedTasks[count++] = timedTask;
+        }
+    }
+
+    /** Groups our systems into stages. Each system is placed in the stage after the latest stage
+      * that contains a higher priority system with which it conflicts. Thus conflicting systems
+      * retain their priority order, and the systems in a single stage can be updated in parallel.
+      */
+    protected List<Stage> schedule () {
+        List<Stage> stages = new ArrayList<Stage>();
+        int[] stageIdx = new int[_systems.size()];
+        for (int ii = 0, ll = _systems.size(); ii < ll; ii++) {
+            final System sys = _systems.get(ii);
+            int idx = 0;
+            for (int jj = 0; jj < ii; jj++) {
+                if (stageIdx[jj] >= idx && sys.conflictsWith(_systems.get(jj))) {
+                    idx = stageIdx[jj]+1;
+                }
+            }
+            stageIdx[ii] = idx;
+            if (idx == stages.size()) stages.add(new Stage());
+            stages.get(idx).add(sys, new Runnable() {
+                public void run () { sys.update(_clock); }
+            }, new Runnable() {
+                public void run () { _profiler.timeUpdate(sys, _clock); }
+            });
+        }
+        return stages;
+    }
+
     protected BitVec components (Entity ent) {
         return ent.comps;
     }
@@ -246,7 +715,56 @@ public class World implements Iterable<Entity>
     protected final ArrayList<System> _systems = new ArrayList<System>();
     protected final ArrayList<Component> _comps = new ArrayList<Component>();
 
+    // Systems which define their interest via a component query, indexed by component id
+    protected final ArrayList<Bag<System>> _compSystems = new ArrayList<Bag<System>>();
+    // Systems which define their interest via isInterested, which must always be checked
+    protected final Bag<System> _unindexed = Bag.create();
+    // Scratch state used by notifyChanged
+    protected final BitVec _notified = new BitVec(2);
+    protected System[] _changed = new System[16];
+
+    // Command buffers applied after our systems are updated
+    protected final List<CommandBuffer> _buffers = new ArrayList<CommandBuffer>();
+
+    // Records timing information for our systems, if enabled
+    protected Profiler _profiler;
+
+    // Used to update systems in parallel, if configured
+    protected TaskPool _taskPool;
+    protected List<Stage> _stages;
+    protected Clock _clock;
+
+    // The queue of free entity ids, oldest first; those before _idsHead have been reused
     protected final IntBag _ids = new IntBag();
-    protected Entity[] _entities = new Entity[64];
+    protected int _idsHead;
+    protected Entity[] _entities = new Entity[ENTITIES_SIZE];
     protected int _nextEntityId = 1;
+
+    // The generation of each entity id, incremented every time that id is recycled
+    protected int[] _generations = new int[ENTITIES_SIZE];
+    // The newest generation of the ids discarded by trim(); those ids start out at this generation
+    // if they are reused, so that handles to trimmed entities are never mistaken for handles to
+    // new entities
+    protected int _trimmedGeneration;
+
+    // The number of live (created and not yet destroyed) entities, and its peak since last trim
+    protected int _live, _peakLive;
+    protected int _autoTrimInterval, _ticksSinceTrim;
+
+    /** The number of reused ids at the front of our free id queue which prompts us to discard
+      * them, if they are also at least half of the queue. */
+    protected static final int MIN_IDS_COMPACT = 64;
+
+    /** Identifies the start of a snapshot written by {@link #writeSnapshot}. */
+    protected static final int SNAPSHOT_MAGIC = 0x54505753; // TPWS
+
+    /** The states of the entities recorded in a snapshot. */
+    protected static final byte SNAP_FREE = 0, SNAP_DISABLED = 1, SNAP_ENABLED = 2;
+    protected static final byte SNAP_DISPOSED = 3;
+
+    /** The initial (and minimum) size of the entities array. */
+    protected static final int ENTITIES_SIZE = 64;
+
+    /** The approximate size of a pooled entity, used when reporting trimmed storage. */
+    protected static final int ENTITY_BYTES = 160;
 }
@@ -0,0 +1,79 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.flump;
+
+import java.util.List;
+
+/**
+ * The keyframe, transform and alpha of each layer of a movie, precomputed for every frame (and
+ * optionally for evenly spaced sub-frames). Created via {@link Movie.Symbol#bake}, and shared by
+ * all instances of the movie.
+ */
+public class BakedTimeline
+{
+    /** The number of samples per frame. */
+    public final int subframes;
+
+    /** Returns the number of samples of each layer: one for every sub-frame, and one for the
+     * very end of the movie. */
+    public int samples () {
+        return _samples;
+    }
+
+    /** Returns the index of the sample for {@code frame}: the last sample at or before it. */
+    public int sample (float frame) {
+        int ss = (int)(frame * subframes);
+        return (ss < 0) ? 0 : Math.min(ss, _samples-1);
+    }
+
+    /** Returns the index of the keyframe of layer {@code layer} that contains {@code frame}. */
+    public int keyframe (int layer, float frame) {
+        int[] keyframes = _keyframes[layer];
+        int ff = (int)frame;
+        return keyframes[(ff < 0) ? 0 : Math.min(ff, keyframes.length-1)];
+    }
+
+    /**
+     * Copies the transform (m00, m01, m10, m11, tx, ty) and alpha of layer {@code layer} at
+     * sample {@code sample} into {@code out}, starting at {@code offset}.
+     */
+    public void get (int layer, int sample, float[] out, int offset) {
+        java.lang.System.arraycopy(_values[layer], sample*VALUES, out, offset, VALUES);
+    }
+
+    protected BakedTimeline (Movie.Symbol symbol, int subframes) {
+        this.subframes = subframes;
+        int frames = symbol.frames, layers = symbol.layers.size();
+        _samples = frames*subframes + 1;
+        _keyframes = new int[layers][frames+1];
+        _values = new float[layers][_samples * VALUES];
+        for (int ll = 0; ll < layers; ll++) {
+            List<KeyframeData> keyframes = symbol.layers.get(ll).keyframes;
+            int finalKf = keyframes.size()-1;
+            // each keyframe starts on a whole frame, so the keyframe of a sub-frame is that of
+            // the frame it follows
+            int[] kfs = _keyframes[ll];
+            for (int ff = 0, kk = 0; ff <= frames; ff++) {
+                while (kk < finalKf && keyframes.get(kk+1).index <= ff) kk++;
+                kfs[ff] = kk;
+            }
+            for (int ss = 0; ss < _samples; ss++) {
+                float frame = ss / (float)subframes;
+                Movie.computeTransform(keyframes, kfs[ss / subframes], frame,
+                                       _values[ll], ss*VALUES);
+            }
+        }
+    }
+
+    protected final int _samples;
+    // the index of the keyframe of each layer at each whole frame
+    protected final int[][] _keyframes;
+    // the transform and alpha of each layer at each sample
+    protected final float[][] _values;
+
+    /** The number of values stored per layer per sample: a transform and an alpha. */
+    protected static final int VALUES = 7;
+}
@@ -45,8 +45,37 @@ public class Movie implements Instance
         @Override public String name () { return _name; }
         @Override public Movie createInstance () { return new Movie(this); }
 
+        /**
+         * Precomputes the transform and alpha of each of this movie's layers at every frame, so
+         * that instances of this movie look them up rather than interpolating keyframes. The
+         * timeline is shared by all instances, so this is worthwhile when many instances of a
+         * movie play at once. Layers are then only updated at whole frames, as in Flash. This
+         * does not bake the movies nested in this movie, which have their own symbols.
+         */
+        public void bake () {
+            bake(1);
+        }
+
+        /**
+         * Like {@link #bake()}, but also precomputes {@code subframes-1} evenly spaced samples
+         * between each pair of frames, for smoother playback when the display refreshes faster
+         * than this movie's frame rate (or when the movie is slowed via {@link Movie#setSpeed}).
+         */
+        public void bake (int subframes) {
+            if (subframes < 1) throw new IllegalArgumentException("subframes must be >= 1");
+            if (_baked == null || _baked.subframes != subframes) {
+                _baked = new BakedTimeline(this, subframes);
+            }
+        }
+
+        /** Returns this movie's baked timeline, or null if it has not been baked. */
+        public BakedTimeline baked () {
+            return _baked;
+        }
+
         protected String _name;
         protected float _framesPerMs;
+        protected BakedTimeline _baked;
     }
 
     public final Signal<String> labelPassed = Signal.create();
@@ -55,7 +84,7 @@ public class Movie implements Instance
         _symbol = symbol;
         _animators = new LayerAnimator[symbol.layers.size()];
         for (int ii = 0, ll = _animators.length; ii < ll; ++ii) {
-            LayerAnimator animator = new LayerAnimator(symbol.layers.get(ii));
+            LayerAnimator animator = new LayerAnimator(symbol.layers.get(ii), ii);
             _animators[ii] = animator;
             _root.add(animator.content);
         }
@@ -180,8 +209,9 @@ public class Movie implements Instance
         public int keyframeIdx = 0;
         public boolean changedKeyframe = false;
 
-        public LayerAnimator (LayerData data) {
+        public LayerAnimator (LayerData data, int index) {
             this.data = data;
+            _index = index;
             if (data._multipleSymbols) {
                 _instances = new Instance[data.keyframes.size()];
                 for (int ii = 0, ll = _instances.length; ii < ll; ++ii) {
@@ -210,9 +240,18 @@ public class Movie implements Instance
 
             int startFrame = keyframeIdx + 1;
 
-            while (keyframeIdx < finalFrame && keyframes.get(keyframeIdx+1).index <= frame) {
-                ++keyframeIdx;
-                changedKeyframe = true;
+            BakedTimeline baked = _symbol._baked;
+            if (baked != null) {
+                int bakedIdx = baked.keyframe(_index, frame);
+                if (bakedIdx != keyframeIdx) {
+                    keyframeIdx = bakedIdx;
+                    changedKeyframe = true;
+                }
+            } else {
+                while (keyframeIdx < finalFrame && keyframes.get(keyframeIdx+1).index <= frame) {
+                    ++keyframeIdx;
+                    changedKeyframe = true;
+                }
             }
 
             if (changedKeyframe && _instances != null) {
@@ -239,55 +278,22 @@ public class Movie implements Instance
                 return; // Don't bother animating invisible layers
             }
 
-            float locX = kf.loc.x();
-            float locY = kf.loc.y();
-            float scaleX = kf.scale.x();
-            float scaleY = kf.scale.y();
-            float skewX = kf.skew.x();
-            float skewY = kf.skew.y();
-            float alpha = kf.alpha;
-
-            if (kf.tweened && keyframeIdx < finalFrame) {
-                // Interpolate with the next keyframe, if there's something on the next keyframe
-                KeyframeData nextKf = keyframes.get(keyframeIdx+1);
-                if (nextKf.symbol() != null) {
-                    float interp = (frame-kf.index) / kf.duration;
-                    float ease = kf.ease;
-                    if (ease != 0) {
-                        float t;
-                        if (ease < 0) {
-                            // Ease in
-                            float inv = 1 - interp;
-                            t = 1 - inv*inv;
-                            ease = -ease;
-                        } else {
-                            // Ease out
-                            t = interp*interp;
-                        }
-                        interp = ease*t + (1-ease)*interp;
-                    }
-                    locX += (nextKf.loc.x()-locX) * interp;
-                    locY += (nextKf.loc.y()-locY) * interp;
-                    scaleX += (nextKf.scale.x()-scaleX) * interp;
-                    scaleY += (nextKf.scale.y()-scaleY) * interp;
-                    skewX += (nextKf.skew.x()-skewX) * interp;
-                    skewY += (nextKf.skew.y()-skewY) * interp;
-                    alpha += (nextKf.alpha-alpha) * interp;
-                }
+            // look up our transform and alpha in our movie's baked timeline, or compute them
+            float[] xf;
+            int off;
+            if (baked != null) {
+                xf = baked._values[_index];
+                off = baked.sample(frame) * BakedTimeline.VALUES;
+            } else {
+                xf = _xform;
+                off = 0;
+                computeTransform(keyframes, keyframeIdx, frame, xf, 0);
             }
-
-            float sinX = FloatMath.sin(skewX), cosX = FloatMath.cos(skewX);
-            float sinY = FloatMath.sin(skewY), cosY = FloatMath.cos(skewY);
-
-            // Create a transformation matrix that translates to locX/Y, skews, then scales
-            float m00 = cosY * scaleX;
-            float m01 = sinY * scaleX;
-            float m10 = -sinX * scaleY;
-            float m11 = cosX * scaleY;
-            content.transform().setTransform(m00, m01, m10, m11, locX, locY);
+            content.transform().setTransform(
+                xf[off], xf[off+1], xf[off+2], xf[off+3], xf[off+4], xf[off+5]);
             content.setOrigin(kf.pivot.x(), kf.pivot.y());
 
-            content.setAlpha(alpha);
+            content.setAlpha(xf[off+6]);
 
             if (_current != null) {
                 _current.paint(dt);
@@ -314,6 +320,9 @@ public class Movie implements Instance
             }
         }
 
+        protected final int _index; // Our index in our movie's layers
+        protected final float[] _xform = new float[BakedTimeline.VALUES];
+
         protected Instance _current; // The instance currently visible
         protected Instance[] _instances; // Null if only 0-1 instance on this layer
 
@@ -321,6 +330,64 @@ public class Movie implements Instance
         protected tripleplay.flump.Symbol _prevFrameSymbol = null;
     }
 
+    /**
+     * Computes the transform (m00, m01, m10, m11, tx, ty) and alpha of a layer with the supplied
+     * {@code keyframes} at {@code frame}, which is on its {@code keyframeIdx}th keyframe, and
+     * stores them in {@code out} starting at {@code offset}.
+     */
+    protected static void computeTransform (List<KeyframeData> keyframes, int keyframeIdx,
+                                            float frame, float[] out, int offset) {
+        KeyframeData kf = keyframes.get(keyframeIdx);
+        float locX = kf.loc.x();
+        float locY = kf.loc.y();
+        float scaleX = kf.scale.x();
+        float scaleY = kf.scale.y();
+        float skewX = kf.skew.x();
+        float skewY = kf.skew.y();
+        float alpha = kf.alpha;
+
+        if (kf.tweened && keyframeIdx < keyframes.size()-1) {
+            // Interpolate with the next keyframe, if there's something on the next keyframe
+            KeyframeData nextKf = keyframes.get(keyframeIdx+1);
+            if (nextKf.symbol() != null) {
+                float interp = (frame-kf.index) / kf.duration;
+                float ease = kf.ease;
+                if (ease != 0) {
+                    float t;
+                    if (ease < 0) {
+                        // Ease in
+                        float inv = 1 - interp;
+                        t = 1 - inv*inv;
+                        ease = -ease;
+                    } else {
+                        // Ease out
+                        t = interp*interp;
+                    }
+                    interp = ease*t + (1-ease)*interp;
+                }
+                locX += (nextKf.loc.x()-locX) * interp;
+                locY += (nextKf.loc.y()-locY) * interp;
+                scaleX += (nextKf.scale.x()-scaleX) * interp;
+                scaleY += (nextKf.scale.y()-scaleY) * interp;
+                skewX += (nextKf.skew.x()-skewX) * interp;
+                skewY += (nextKf.skew.y()-skewY) * interp;
+                alpha += (nextKf.alpha-alpha) * interp;
+            }
+        }
+
+        float sinX = FloatMath.sin(skewX), cosX = FloatMath.cos(skewX);
+        float sinY = FloatMath.sin(skewY), cosY = FloatMath.cos(skewY);
+
+        // Create a transformation matrix that translates to locX/Y, skews, then scales
+        out[offset] = cosY * scaleX;
+        out[offset+1] = sinY * scaleX;
+        out[offset+2] = -sinX * scaleY;
+        out[offset+3] = cosX * scaleY;
+        out[offset+4] = locX;
+        out[offset+5] = locY;
+        out[offset+6] = alpha;
+    }
+
     protected Symbol _symbol;
     protected GroupLayer _root = new GroupLayer();
     protected LayerAnimator[] _animators;
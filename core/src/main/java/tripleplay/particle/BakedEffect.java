@@ -0,0 +1,320 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle;
+
+import java.util.Arrays;
+
+import react.Signal;
+import react.Slot;
+import react.UnitSlot;
+
+import playn.core.Clock;
+import playn.core.QuadBatch;
+import playn.core.Surface;
+import playn.core.Tile;
+import playn.scene.Layer;
+import playn.scene.LayerUtil;
+
+import static tripleplay.particle.ParticleBuffer.*;
+
+/**
+ * A particle effect which has been simulated in advance, and which can be played back any number
+ * of times, by any number of {@link Player}s, at the cost of interpolating its particles and
+ * rendering them. This suits effects which are the same every time they are played (a burst of
+ * coins, sparks from a hit), especially when many copies play at once. Example usage:
+ *
+ * <pre>{@code
+ * Emitter config = new Emitter(batch, paint, 100, sparkTile);
+ * config.generator = Generator.impulse(50);
+ * // ... add initializers and effectors, positioning particles around (0, 0)
+ * BakedEffect sparks = BakedEffect.bake(config, 30, 5);
+ * // then, for every hit:
+ * BakedEffect.Player player = new BakedEffect.Player(sparks, batch, paint, sparkTile);
+ * player.setOrigin(hitX, hitY);
+ * player.destroyOnDone();
+ * scene.add(player.layer);
+ * }</pre>
+ *
+ * <p>The state of every particle (its transform and tint) is recorded at a fixed sample rate.
+ * Between samples, a particle's transform is interpolated linearly, and its tint is that of the
+ * nearer sample. A particle appears at the first sample after its birth and disappears after the
+ * last sample before its death, so the sample rate should be high enough that no particle lives
+ * for less than a couple of samples.</p>
+ */
+public class BakedEffect
+{
+    /** Plays a baked effect. */
+    public static class Player
+    {
+        /** The layer which renders this player's particles. */
+        public final Layer layer;
+
+        /** A signal emitted when this player reaches the end of its effect (unless looping). */
+        public final Signal<Player> onDone = Signal.create();
+
+        /** The effect played by this player. */
+        public final BakedEffect effect;
+
+        /** Whether this player restarts its effect when it reaches the end. */
+        public boolean loop;
+
+        /**
+         * Creates a player which renders its particles using {@code batch}. When this player's
+         * layer is added to the scene graph, it will connect itself to {@code paint} to advance
+         * its playback, and when its layer is removed, it will disconnect from {@code paint}.
+         *
+         * @param tile the texture to use when rendering particles.
+         */
+        public Player (BakedEffect effect, final ParticleBatch batch, Signal<Clock> paint,
+                       Tile tile) {
+            this.effect = effect;
+            this.layer = new Layer() {
+                @Override protected void paintImpl (Surface surface) {
+                    QuadBatch obatch = surface.pushBatch(batch);
+                    render(batch);
+                    surface.popBatch(obatch);
+                }
+            };
+            _tile = tile;
+            _data = new float[effect.maxParticles() * NUM_FIELDS];
+            LayerUtil.bind(layer, paint, new Slot<Clock>() {
+                public void onEmit (Clock clock) { paint(clock); }
+            });
+        }
+
+        /** Offsets the positions of this player's particles by {@code (x, y)}. Particles are
+         * positioned in the coordinate system of the surface into which they are rendered. */
+        public Player setOrigin (float x, float y) {
+            _x = x;
+            _y = y;
+            return this;
+        }
+
+        /** Restarts this player's effect from its beginning. */
+        public void restart () {
+            _time = 0;
+            _done = false;
+        }
+
+        /** Configures this player to destroy its layer when it reaches the end of its effect. */
+        public void destroyOnDone () {
+            onDone.connect(new UnitSlot() { @Override public void onEmit () { layer.close(); }});
+        }
+
+        protected void paint (Clock clock) {
+            if (_done) return;
+            _time += clock.dt/1000f;
+            float duration = effect.duration();
+            if (_time >= duration) {
+                if (loop && duration > 0) _time %= duration;
+                else {
+                    _done = true;
+                    onDone.emit(this);
+                }
+            }
+        }
+
+        protected void render (ParticleBatch batch) {
+            if (_done) return;
+            int count = effect.sample(_time, _x, _y, _data);
+            if (count <= 0) return;
+            float ql = -_tile.width()/2, qt = -_tile.height()/2;
+            float qr = _tile.width()/2, qb = _tile.height()/2;
+            batch.prepare(_tile, count);
+            for (int pp = 0; pp < count; pp++) {
+                batch.addParticle(ql, qt, qr, qb, _data, pp*NUM_FIELDS);
+            }
+        }
+
+        protected final Tile _tile;
+        protected final float[] _data;
+        protected float _x, _y, _time;
+        protected boolean _done;
+    }
+
+    /**
+     * Simulates {@code emitter} until it is empty (its generator is exhausted and it has no live
+     * particles), or for {@code maxDuration} seconds, and records its particles {@code fps} times
+     * per second. The sample interval is rounded to whole milliseconds. The emitter is driven
+     * directly, so it need not be (and should not be) added to the scene graph, and it is left
+     * in the state in which baking ended.
+     */
+    public static BakedEffect bake (Emitter emitter, float fps, float maxDuration) {
+        int dtMillis = Math.max(1, Math.round(1000 / fps));
+        Clock clock = new Clock();
+        clock.dt = dtMillis;
+
+        ParticleBuffer buffer = emitter._buffer;
+        int capacity = buffer.capacity();
+        // the sample index of each slot's particle in the previous and current samples (or -1),
+        // and each slot's particle's birth time, which we use to notice that a slot was reused
+        int[] prevIndex = new int[capacity], curIndex = new int[capacity];
+        float[] births = new float[capacity];
+        Arrays.fill(prevIndex, -1);
+
+        Builder builder = new Builder();
+        float[] pdata = new float[NUM_FIELDS];
+        for (int frame = 0, frames = (int)(maxDuration * 1000 / dtMillis); frame < frames;
+             frame++) {
+            emitter.paint(clock);
+            if (emitter.generator == null && buffer.liveCount() == 0) break;
+
+            builder.startFrame();
+            Arrays.fill(curIndex, -1);
+            for (int pp = 0; pp < capacity; pp++) {
+                if (!buffer.isAlive(pp)) continue;
+                read(buffer, pp, pdata);
+                int idx = builder.add(pdata);
+                int prev = prevIndex[pp];
+                if (prev >= 0 && births[pp] == pdata[BIRTH]) builder.link(prev, idx);
+                births[pp] = pdata[BIRTH];
+                curIndex[pp] = idx;
+            }
+            int[] tmp = prevIndex; prevIndex = curIndex; curIndex = tmp;
+        }
+        return builder.build(dtMillis / 1000f);
+    }
+
+    /** Returns the number of samples in this effect. */
+    public int sampleCount () {
+        return _frameStarts.length - 1;
+    }
+
+    /** Returns the interval between samples, in seconds. */
+    public float interval () {
+        return _interval;
+    }
+
+    /** Returns the duration of this effect, in seconds. Sample {@code s} is recorded at time
+     * {@code (s+1)} times {@link #interval} and held for one interval, so the effect ends one
+     * interval after its last sample. An effect with no samples has zero duration. */
+    public float duration () {
+        int count = sampleCount();
+        return (count == 0) ? 0 : (count+1) * _interval;
+    }
+
+    /** Returns the maximum number of particles live at any time in this effect. */
+    public int maxParticles () {
+        return _maxParticles;
+    }
+
+    /**
+     * Computes the state of this effect's particles {@code time} seconds after it started.
+     * Fields {@link ParticleBuffer#M00} through {@link ParticleBuffer#GREEN_BLUE} of each
+     * particle are written into {@code into}, as in {@link ParticleBuffer#data}, with {@code (x,
+     * y)} added to their positions. Other fields are not written.
+     *
+     * @param into an array of at least {@link #maxParticles} times {@link
+     * ParticleBuffer#NUM_FIELDS} values.
+     * @return the number of particles written.
+     */
+    public int sample (float time, float x, float y, float[] into) {
+        // sample s records the particles as of time (s+1) * interval
+        float pos = time / _interval - 1;
+        if (pos < 0 || pos >= sampleCount()) return 0;
+        int ss = (int)pos;
+        float a = pos - ss;
+        float[] samples = _samples;
+        int count = 0;
+        for (int ii = _frameStarts[ss], ll = _frameStarts[ss+1]; ii < ll; ii++) {
+            int next = _next[ii], from = ii*SAMPLE_SIZE, ppos = (count++)*NUM_FIELDS + M00;
+            if (next < 0) {
+                java.lang.System.arraycopy(samples, from, into, ppos, SAMPLE_SIZE);
+            } else {
+                // interpolate the transform (M00 through TY), and use the nearer tint
+                int to = next*SAMPLE_SIZE;
+                for (int ff = 0; ff < TINT; ff++) {
+                    float v0 = samples[from+ff];
+                    into[ppos+ff] = v0 + (samples[to+ff] - v0) * a;
+                }
+                int tint = ((a < 0.5f) ? from : to) + TINT;
+                into[ppos+TINT] = samples[tint];
+                into[ppos+TINT+1] = samples[tint+1];
+            }
+            into[ppos + TX - M00] += x;
+            into[ppos + TY - M00] += y;
+        }
+        return count;
+    }
+
+    protected BakedEffect (float interval, float[] samples, int[] next, int[] frameStarts,
+                           int maxParticles) {
+        _interval = interval;
+        _samples = samples;
+        _next = next;
+        _frameStarts = frameStarts;
+        _maxParticles = maxParticles;
+    }
+
+    /** Reads the fields of particle {@code pp} of {@code buffer} into {@code pdata}. */
+    protected static void read (ParticleBuffer buffer, int pp, float[] pdata) {
+        if (buffer.data != null) {
+            java.lang.System.arraycopy(buffer.data, pp*NUM_FIELDS, pdata, 0, NUM_FIELDS);
+        } else {
+            for (int ff = 0; ff < NUM_FIELDS; ff++) pdata[ff] = buffer.fields[ff][pp];
+        }
+    }
+
+    /** Accumulates samples while baking. */
+    protected static class Builder {
+        public void startFrame () {
+            if (_frames == _frameStarts.length) _frameStarts = grow(_frameStarts);
+            _frameStarts[_frames++] = _count;
+        }
+
+        public int add (float[] pdata) {
+            if (_count == _next.length) {
+                _next = grow(_next);
+                float[] samples = new float[_next.length * SAMPLE_SIZE];
+                java.lang.System.arraycopy(_samples, 0, samples, 0, _count * SAMPLE_SIZE);
+                _samples = samples;
+            }
+            java.lang.System.arraycopy(pdata, M00, _samples, _count*SAMPLE_SIZE, SAMPLE_SIZE);
+            _next[_count] = -1;
+            _maxParticles = Math.max(_maxParticles, _count - _frameStarts[_frames-1] + 1);
+            return _count++;
+        }
+
+        public void link (int from, int to) {
+            _next[from] = to;
+        }
+
+        public BakedEffect build (float interval) {
+            int[] frameStarts = new int[_frames+1];
+            java.lang.System.arraycopy(_frameStarts, 0, frameStarts, 0, _frames);
+            frameStarts[_frames] = _count;
+            int[] next = new int[_count];
+            java.lang.System.arraycopy(_next, 0, next, 0, _count);
+            float[] samples = new float[_count * SAMPLE_SIZE];
+            java.lang.System.arraycopy(_samples, 0, samples, 0, samples.length);
+            return new BakedEffect(interval, samples, next, frameStarts, _maxParticles);
+        }
+
+        protected static int[] grow (int[] array) {
+            int[] narray = new int[array.length*2];
+            java.lang.System.arraycopy(array, 0, narray, 0, array.length);
+            return narray;
+        }
+
+        protected float[] _samples = new float[64 * SAMPLE_SIZE];
+        protected int[] _next = new int[64], _frameStarts = new int[16];
+        protected int _count, _frames, _maxParticles;
+    }
+
+    protected final float _interval;
+    // the fields M00 through GREEN_BLUE of each particle in each sample, sample by sample
+    protected final float[] _samples;
+    // the index of each particle's record in the next sample, or -1 if it dies before then
+    protected final int[] _next;
+    // the index of the first particle record of each sample, followed by the total count
+    protected final int[] _frameStarts;
+    protected final int _maxParticles;
+
+    /** The number of fields recorded for each particle: M00 through GREEN_BLUE. */
+    protected static final int SAMPLE_SIZE = GREEN_BLUE - M00 + 1;
+    /** The offset of the tint (alpha/red, then green/blue) in each recorded particle. */
+    protected static final int TINT = ALPHA_RED - M00;
+}
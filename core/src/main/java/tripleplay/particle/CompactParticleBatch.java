@@ -0,0 +1,287 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle;
+
+import playn.core.GL20;
+import playn.core.GLProgram;
+import playn.core.Tile;
+import playn.core.TriangleBatch;
+import static playn.core.GL20.*;
+
+/**
+ * A particle batch which uses a much more compact vertex format than {@link ParticleBatch}.
+ * That batch copies each particle's transform and tint, along with a position and texture
+ * coordinate, into each of its four vertices: 48 floats per particle, plus six indices. This
+ * batch transforms the corners of each particle on the CPU and writes only their positions and
+ * the particle's tint, with the corner number folded into the tint: 16 floats per particle. The
+ * indices never change, so they are uploaded once, when the batch is created. The vertex shader
+ * computes each vertex's texture coordinates from its corner number and the current tile. This
+ * uses only OpenGL ES 2.0 features.
+ *
+ * <p>Quads and triangles added via {@link #addQuad} and {@code addTris} (by layers drawn while
+ * this batch is pushed onto a surface, say) are drawn with the shader inherited from {@link
+ * ParticleBatch}, and the batch flushes whenever it switches between those and particles.
+ * Because the tile's texture coordinates are supplied once per draw call, the batch must also
+ * flush when switching between tiles, even tiles from the same texture.</p>
+ */
+public class CompactParticleBatch extends ParticleBatch
+{
+    /** The maximum number of particles drawn in a single call (limited by our 16-bit indices). */
+    public static final int MAX_QUADS = 65536/4;
+
+    public CompactParticleBatch (GL20 gl) {
+        super(gl);
+        TriangleBatch.Source source = new TriangleBatch.Source();
+        _program = new GLProgram(gl, VERTEX_SHADER, source.fragment());
+        _uTexture = _program.getUniformLocation("u_Texture");
+        _uHScreenSize = _program.getUniformLocation("u_HScreenSize");
+        _uFlip = _program.getUniformLocation("u_Flip");
+        _uTile = _program.getUniformLocation("u_Tile");
+        _aPosition = _program.getAttribLocation("a_Position");
+        _aColor = _program.getAttribLocation("a_Color");
+        _superAttribs = new int[] { aMatrix, aTranslation, aColor, aPosition, aTexCoord };
+
+        int[] ids = new int[2];
+        gl.glGenBuffers(2, ids, 0);
+        _verticesId = ids[0];
+        _elementsId = ids[1];
+
+        // every quad has the same indices (relative to its first vertex), so upload them once
+        short[] elems = new short[MAX_QUADS*6];
+        for (int qq = 0, ee = 0; qq < MAX_QUADS; qq++) {
+            for (int ii = 0; ii < QUAD_INDICES.length; ii++) {
+                elems[ee++] = (short)(qq*4 + QUAD_INDICES[ii]);
+            }
+        }
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, _elementsId);
+        gl.bufs.setShortBuffer(elems, 0, elems.length);
+        gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, elems.length*2, gl.bufs.shortBuffer,
+                        GL_STATIC_DRAW);
+        gl.checkError("CompactParticleBatch end ctor");
+    }
+
+    @Override public CompactParticleBatch prepare (Tile tile, int maxQuads) {
+        useOurProgram();
+        setTexture(tile.texture());
+        float sx = tile.sx(), sy = tile.sy(), tx = tile.tx(), ty = tile.ty();
+        if (sx != _sx || sy != _sy || tx != _tx || ty != _ty) {
+            if (_verts.quads > 0) flush();
+            _sx = sx; _sy = sy;
+            _tx = tx; _ty = ty;
+        }
+        _verts.ensureCapacity(Math.min(_verts.quads + maxQuads, MAX_QUADS));
+        return this;
+    }
+
+    @Override public void addParticle (float l, float t, float r, float b, float[] data,
+                                       int ppos) {
+        if (_superActive) useOurProgram();
+        if (_verts.isFull()) flush();
+        _verts.add(l, t, r, b, data, ppos);
+    }
+
+    @Override public void addQuad (int tint, float m00, float m01, float m10, float m11,
+                                   float tx, float ty, float x1, float y1, float sx1, float sy1,
+                                   float x2, float y2, float sx2, float sy2,
+                                   float x3, float y3, float sx3, float sy3,
+                                   float x4, float y4, float sx4, float sy4) {
+        useSuperProgram();
+        super.addQuad(tint, m00, m01, m10, m11, tx, ty, x1, y1, sx1, sy1, x2, y2, sx2, sy2,
+                      x3, y3, sx3, sy3, x4, y4, sx4, sy4);
+    }
+
+    @Override public void addTris (float[] xys, int xysOffset, int xysLen, float tw, float th,
+                                   int[] indices, int indicesOffset, int indicesLen,
+                                   int indexBase) {
+        useSuperProgram();
+        super.addTris(xys, xysOffset, xysLen, tw, th, indices, indicesOffset, indicesLen,
+                      indexBase);
+    }
+
+    @Override public void addTris (float[] xys, float[] sxys, int xysOffset, int xysLen,
+                                   int[] indices, int indicesOffset, int indicesLen,
+                                   int indexBase) {
+        useSuperProgram();
+        super.addTris(xys, sxys, xysOffset, xysLen, indices, indicesOffset, indicesLen,
+                      indexBase);
+    }
+
+    @Override public void begin (float fbufWidth, float fbufHeight, boolean flip) {
+        super.begin(fbufWidth, fbufHeight, flip);
+        // our superclass has activated its own program and enabled its attributes; we use ours
+        disableSuperAttribs();
+        _program.activate();
+        _superActive = false;
+        gl.glUniform2f(_uHScreenSize, fbufWidth/2f, fbufHeight/2f);
+        gl.glUniform1f(_uFlip, flip ? -1 : 1);
+        gl.checkError("CompactParticleBatch begin");
+    }
+
+    @Override public void flush () {
+        super.flush(); // draws any quads and triangles added while our superclass's is active
+        int quads = _verts.quads;
+        if (quads == 0) return;
+        bindTexture();
+        gl.glUniform4f(_uTile, _sx, _sy, _tx, _ty);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, _verticesId);
+        glBindVertAttrib(_aPosition, 2, GL_FLOAT, VERTEX_STRIDE, 0);
+        glBindVertAttrib(_aColor, 2, GL_FLOAT, VERTEX_STRIDE, 8);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, _elementsId);
+        gl.glActiveTexture(GL_TEXTURE0);
+        gl.glUniform1i(_uTexture, 0);
+
+        int floats = quads * FLOATS_PER_QUAD;
+        gl.bufs.setFloatBuffer(_verts.verts, 0, floats);
+        gl.glBufferData(GL_ARRAY_BUFFER, floats*4, gl.bufs.floatBuffer, GL_STREAM_DRAW);
+        gl.glDrawElements(GL_TRIANGLES, quads*6, GL_UNSIGNED_SHORT, 0);
+        gl.checkError("CompactParticleBatch flush");
+        _verts.quads = 0;
+    }
+
+    @Override public void end () {
+        super.end();
+        gl.glDisableVertexAttribArray(_aPosition);
+        gl.glDisableVertexAttribArray(_aColor);
+        gl.checkError("CompactParticleBatch end");
+    }
+
+    @Override public void close () {
+        super.close();
+        _program.close();
+        gl.glDeleteBuffers(2, new int[] { _verticesId, _elementsId }, 0);
+        gl.checkError("CompactParticleBatch close");
+    }
+
+    @Override public String toString () {
+        return "cpb/" + MAX_QUADS;
+    }
+
+    /** Switches to our program, after drawing anything added using our superclass's. */
+    protected void useOurProgram () {
+        if (!_superActive) return;
+        flush();
+        disableSuperAttribs();
+        _program.activate();
+        _superActive = false;
+    }
+
+    /** Switches to our superclass's program, after drawing any particles added using ours. */
+    protected void useSuperProgram () {
+        if (_superActive) return;
+        flush();
+        gl.glDisableVertexAttribArray(_aPosition);
+        gl.glDisableVertexAttribArray(_aColor);
+        program.activate(); // its uniforms were set when it was activated in begin()
+        // rebind our superclass's attributes and buffers, as it does in begin()
+        int stride = vertexStride(), stableSize = stableAttrsSize()*4;
+        gl.glBindBuffer(GL_ARRAY_BUFFER, verticesId);
+        glBindVertAttrib(aMatrix, 4, GL_FLOAT, stride, 0);
+        glBindVertAttrib(aTranslation, 2, GL_FLOAT, stride, 16);
+        glBindVertAttrib(aColor, 2, GL_FLOAT, stride, 24);
+        glBindVertAttrib(aPosition, 2, GL_FLOAT, stride, stableSize);
+        glBindVertAttrib(aTexCoord, 2, GL_FLOAT, stride, stableSize+8);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, elementsId);
+        gl.glActiveTexture(GL_TEXTURE0);
+        gl.glUniform1i(uTexture, 0);
+        gl.checkError("CompactParticleBatch useSuperProgram");
+        _superActive = true;
+    }
+
+    protected void disableSuperAttribs () {
+        for (int attr : _superAttribs) {
+            if (attr >= 0) gl.glDisableVertexAttribArray(attr);
+        }
+    }
+
+    /** The vertices of the particles added since our last flush. This is separate from the
+     * batch, which needs a GL context, so that it can be tested without one. */
+    protected static class Vertices {
+        /** The vertex data: {@link #FLOATS_PER_QUAD} values per particle. */
+        public float[] verts = new float[64 * FLOATS_PER_QUAD];
+        /** The number of particles added. */
+        public int quads;
+
+        /** Returns whether no more particles can be drawn in a single call. */
+        public boolean isFull () {
+            return quads == MAX_QUADS;
+        }
+
+        /** Ensures that {@link #verts} can hold {@code quads} particles. */
+        public void ensureCapacity (int quads) {
+            int needed = quads * FLOATS_PER_QUAD;
+            if (verts.length >= needed) return;
+            float[] nverts = new float[Math.max(needed, Math.min(verts.length*2,
+                                                                 MAX_QUADS * FLOATS_PER_QUAD))];
+            java.lang.System.arraycopy(verts, 0, nverts, 0, this.quads * FLOATS_PER_QUAD);
+            verts = nverts;
+        }
+
+        /** Adds the vertices of a particle. See {@link ParticleBatch#addParticle}. */
+        public void add (float l, float t, float r, float b, float[] data, int ppos) {
+            if ((quads+1) * FLOATS_PER_QUAD > verts.length) ensureCapacity(quads+1);
+            float m00 = data[ppos + ParticleBuffer.M00], m01 = data[ppos + ParticleBuffer.M01];
+            float m10 = data[ppos + ParticleBuffer.M10], m11 = data[ppos + ParticleBuffer.M11];
+            float tx = data[ppos + ParticleBuffer.TX], ty = data[ppos + ParticleBuffer.TY];
+            float ar = data[ppos + ParticleBuffer.ALPHA_RED];
+            float gb = data[ppos + ParticleBuffer.GREEN_BLUE];
+            // the corners are (l, t), (r, t), (l, b), (r, b), which are corners 0 through 3
+            float lx = m00*l + tx, ly = m01*l + ty, rx = m00*r + tx, ry = m01*r + ty;
+            float tox = m10*t, toy = m11*t, box = m10*b, boy = m11*b;
+            float[] verts = this.verts;
+            int vv = quads * FLOATS_PER_QUAD;
+            verts[vv++] = lx + tox; verts[vv++] = ly + toy;
+            verts[vv++] = ar;            verts[vv++] = gb;
+            verts[vv++] = rx + tox; verts[vv++] = ry + toy;
+            verts[vv++] = ar + CORNER;   verts[vv++] = gb;
+            verts[vv++] = lx + box; verts[vv++] = ly + boy;
+            verts[vv++] = ar + 2*CORNER; verts[vv++] = gb;
+            verts[vv++] = rx + box; verts[vv++] = ry + boy;
+            verts[vv++] = ar + 3*CORNER; verts[vv++] = gb;
+            quads++;
+        }
+    }
+
+    protected final GLProgram _program;
+    protected final int _uTexture, _uHScreenSize, _uFlip, _uTile, _aPosition, _aColor;
+    protected final int _verticesId, _elementsId;
+    protected final int[] _superAttribs;
+    // whether our superclass's program is active (to draw quads and triangles), not ours
+    protected boolean _superActive;
+
+    protected final Vertices _verts = new Vertices();
+
+    /** The number of floats in each vertex: x, y, alpha/red/corner and green/blue. */
+    protected static final int VERTEX_SIZE = 4;
+    protected static final int VERTEX_STRIDE = VERTEX_SIZE*4;
+    protected static final int FLOATS_PER_QUAD = VERTEX_SIZE*4;
+    /** The corner number is added to the alpha/red value as a multiple of this (alpha/red is
+     * at most 65535, so the sum is exactly representable). */
+    protected static final float CORNER = 65536;
+
+    protected static final String VERTEX_SHADER =
+        TriangleBatch.Source.VERT_UNIFS +
+        "uniform vec4 u_Tile;\n" +
+        "attribute vec2 a_Position;\n" +
+        "attribute vec2 a_Color;\n" +
+        TriangleBatch.Source.VERT_VARS +
+        "void main(void) {\n" +
+        "gl_Position = vec4(a_Position, 0, 1);\n" +
+        "gl_Position.xy /= u_HScreenSize.xy;\n" +
+        "gl_Position.xy -= 1.0;\n" +
+        "gl_Position.y *= u_Flip;\n" +
+        // separate the corner number from the alpha and red
+        "float corner = floor(a_Color.x / 65536.0);\n" +
+        "float alphaRed = a_Color.x - corner * 65536.0;\n" +
+        "float right = mod(corner, 2.0);\n" +
+        "v_TexCoord = vec2(mix(u_Tile.x, u_Tile.z, right),\n" +
+        "                  mix(u_Tile.y, u_Tile.w, (corner - right) / 2.0));\n" +
+        "float red = mod(alphaRed, 256.0);\n" +
+        "float alpha = (alphaRed - red) / 256.0;\n" +
+        "float blue = mod(a_Color.y, 256.0);\n" +
+        "float green = (a_Color.y - blue) / 256.0;\n" +
+        "v_Color = vec4(red / 255.0, green / 255.0, blue / 255.0, alpha / 255.0);\n" +
+        "}";
+}
@@ -26,4 +26,23 @@ public abstract class Effector
      * update.
      */
     public abstract void apply (int index, float[] data, int start, float now, float dt);
+
+    /**
+     * Applies this effector to the particles in {@code buffer} with indices in {@code [from,
+     * to)}. The default implementation calls {@link #apply} for each live particle in that range.
+     * Effectors can override this to process the whole range in a tight loop, accessing either
+     * {@link ParticleBuffer#data} or {@link ParticleBuffer#fields}, whichever is non-null. Such a
+     * loop may also process dead particles, so that it needs no branches; thus a particle's
+     * initializers should set every field on which its effectors depend.
+     *
+     * @param now the number of seconds elapsed since the emitter came into being.
+     * @param dt the amount of time (in fractions of a second) that has elapsed since the last
+     * update.
+     * @param scratch an array of {@link ParticleBuffer#NUM_FIELDS} values which this call may use
+     * to hold a single particle's fields. It is not shared with any concurrent call.
+     */
+    public void applyAll (ParticleBuffer buffer, int from, int to, float now, float dt,
+                          float[] scratch) {
+        buffer.applyEach(this, from, to, now, dt, scratch);
+    }
 }
@@ -8,6 +8,8 @@ package tripleplay.particle;
 import java.util.ArrayList;
 import java.util.List;
 
+import pythagoras.f.IRectangle;
+
 import react.Signal;
 import react.Slot;
 import react.UnitSlot;
@@ -19,11 +21,44 @@ import playn.core.Tile;
 import playn.scene.Layer;
 import playn.scene.LayerUtil;
 
+import tripleplay.util.TaskPool;
+
 /**
  * Emits and updates particles according to a particle system configuration.
  */
 public class Emitter
 {
+    /**
+     * Determines what an emitter does while it is culled, which is when its layer (or one of
+     * that layer's ancestors) is invisible or fully transparent, or when its particles lie
+     * outside its viewport. See {@link #setCulling}. A culled emitter's particles are not
+     * rendered.
+     */
+    public enum Culling {
+        /** The emitter is never culled. */
+        NONE,
+
+        /** The emitter's clock stops while it is culled, so it resumes where it left off. Its
+         * generator does not run and its particles do not age, so {@link #onExhausted} and
+         * {@link #onEmpty} are also delayed until it is no longer culled. */
+        PAUSE,
+
+        /** The emitter's clock and generator keep running while it is culled, but its effectors
+         * are not applied. Once it is no longer culled, its effectors are applied over all of the
+         * elapsed time, in steps of at most {@link #coarseStep} seconds. Effectors which scale
+         * with the time step (like {@code Move}) are thus exact, but those which act once per
+         * application (like {@code Drag}) act once per step rather than once per frame. While
+         * culled, its particles are expired only when all of them
+         * have expired (which costs almost nothing to check), so {@link #onEmpty} fires on time.
+         * Particles do not move while culled, so they will not move into the viewport. */
+        FAST_FORWARD,
+
+        /** As {@link #FAST_FORWARD}, but the effectors are also applied while the emitter is
+         * culled, once every {@link #coarseStep} seconds, over all of the time elapsed since they
+         * were last applied. */
+        COARSE;
+    }
+
     /** The layer to which this emitter is attached. */
     public final Layer layer;
 
@@ -42,6 +77,11 @@ public class Emitter
     /** A signal emitted when this emitter has no live particles and no generator. */
     public final Signal<Emitter> onEmpty = Signal.create();
 
+    /** The interval, in seconds, at which a culled emitter applies its effectors when using
+     * {@link Culling#COARSE} culling, and the longest step in which a culled emitter catches up
+     * on elapsed time. */
+    public float coarseStep = 0.25f;
+
     /**
      * Creates an emitter that uses {@code batch} to render its particles. When this emitter's
      * layer is added to the scene graph, it will connect itself to {@code paint} to drive the
@@ -52,32 +92,105 @@ public class Emitter
      * @param maxParticles the maximum number of active particles.
      * @param tile the texture to use when rendering particles.
      */
-    public Emitter (final ParticleBatch batch, final Signal<Clock> paint, final int maxParticles,
-                    final Tile tile) {
+    public Emitter (ParticleBatch batch, Signal<Clock> paint, int maxParticles, Tile tile) {
+        this(batch, paint, new ParticleBuffer(maxParticles), tile);
+    }
+
+    /**
+     * Creates an emitter that stores its particles in {@code buffer}. This allows the use of a
+     * buffer that stores its particles as a structure of arrays (see {@link ParticleBuffer}).
+     * Otherwise this is the same as {@link #Emitter(ParticleBatch,Signal,int,Tile)}.
+     */
+    public Emitter (final ParticleBatch batch, Signal<Clock> paint, ParticleBuffer buffer,
+                    Tile tile) {
         this.layer = new Layer() {
             @Override protected void paintImpl (Surface surface) {
                 QuadBatch obatch = surface.pushBatch(batch);
-                _buffer.render(batch.prepare(tile, maxParticles), tile.width(), tile.height());
+                render(batch);
                 surface.popBatch(obatch);
             }
         };
-        _buffer = new ParticleBuffer(maxParticles);
+        _buffer = buffer;
+        _tile = tile;
+        bind(paint);
+    }
 
-        LayerUtil.bind(layer, paint, new Slot<Clock>() {
-            public void onEmit (Clock clock) { paint(clock); }
-        });
+    /**
+     * Creates an emitter whose particles are rendered by {@code group}, along with those of the
+     * group's other emitters. This emitter's {@link #layer} renders nothing, but it must still be
+     * added to the scene graph for this emitter to be animated and its particles rendered. Our
+     * particles are drawn where the group's layer is drawn, and only while our layer and all of
+     * its ancestors are visible. Our layer's transform and alpha are not applied to them.
+     *
+     * @param group the group which will render our particles.
+     * @param paint the paint signal which will drive this emitter.
+     * @param buffer the buffer in which to store our particles.
+     * @param tile the texture to use when rendering particles.
+     */
+    public Emitter (EmitterGroup group, Signal<Clock> paint, ParticleBuffer buffer, Tile tile) {
+        this.layer = new Layer() {
+            @Override protected void paintImpl (Surface surface) {} // our group renders us
+        };
+        _buffer = buffer;
+        _tile = tile;
+        bind(paint);
+        group.add(this);
     }
 
     /**
      * Adds the specified number of particles. One usually does not call this manually, but rather
-     * configures {@link #generator} with a generator that adds particles as desired.
+     * configures {@link #generator} with a generator that adds particles as desired. If this
+     * emitter is in a {@link ParticleBudget}, the count may be scaled down by the budget.
      */
     public void addParticles (int count) {
         if (_buffer.isFull()) return;
+        if (_budget != null && (count = _budget.scaleEmission(this, count)) == 0) return;
         for (int ii = 0, ll = initters.size(); ii < ll; ii++) initters.get(ii).willInit(count);
         _buffer.add(count, _time, initters);
     }
 
+    /**
+     * Configures this emitter to apply its effectors in parallel using {@code pool} whenever it
+     * has at least {@code threshold} live particles. The generator and initializers still run on
+     * the calling thread. This is worthwhile only for emitters with many thousands of particles;
+     * see {@link ParticleBuffer#setTaskPool} for the requirements this places on the effectors.
+     * Pass a null pool to return to applying effectors on the calling thread.
+     */
+    public void setTaskPool (TaskPool pool, int threshold) {
+        _buffer.setTaskPool(pool, threshold);
+    }
+
+    /**
+     * Configures what this emitter does when its layer, or one of its ancestors, is invisible or
+     * fully transparent. The emitter is not culled based on the position of its particles.
+     */
+    public void setCulling (Culling culling) {
+        setCulling(culling, null, 0);
+    }
+
+    /**
+     * Configures what this emitter does when it is culled (see {@link Culling}).
+     *
+     * @param viewport if non-null, the emitter is also culled when the bounds of its particles'
+     * positions lie entirely outside this rectangle. Particles are positioned in the coordinate
+     * system of the surface into which they are rendered, which is usually that of the screen, not
+     * that of this emitter's layer. The rectangle is not copied, so it may be updated as the
+     * view scrolls.
+     * @param margin the distance by which particle bounds are expanded before testing them
+     * against the viewport, to account for the size of the particles. Half the larger dimension
+     * of the particle tile suffices for particles that are not scaled up.
+     */
+    public void setCulling (Culling culling, IRectangle viewport, float margin) {
+        _culling = culling;
+        _viewport = viewport;
+        _margin = margin;
+    }
+
+    /** Returns whether this emitter was culled as of its most recent update. */
+    public boolean isCulled () {
+        return _culled;
+    }
+
     /**
      * Configures this emitter to destroy its layer when it runs out of particles.
      */
@@ -85,7 +198,33 @@ public class Emitter
         onEmpty.connect(new UnitSlot() { @Override public void onEmit () { layer.close(); }});
     }
 
+    protected void bind (Signal<Clock> paint) {
+        LayerUtil.bind(layer, paint, new Slot<Clock>() {
+            public void onEmit (Clock clock) { paint(clock); }
+        });
+    }
+
+    /** Renders our particles into {@code batch}. */
+    void render (ParticleBatch batch) {
+        if (_culled) return;
+        double start = (_budget == null) ? 0 : _budget.time();
+        _buffer.render(batch.prepare(_tile, _buffer.capacity()), _tile.width(), _tile.height());
+        if (_budget != null) _budget.noteTime(start);
+    }
+
     protected void paint (Clock clock) {
+        if (_budget == null) update(clock);
+        else {
+            double start = _budget.time();
+            update(clock);
+            _budget.noteTime(start);
+        }
+    }
+
+    protected void update (Clock clock) {
+        _culled = (_culling != Culling.NONE) && computeCulled();
+        if (_culled && _culling == Culling.PAUSE) return;
+
         float dt = clock.dt/1000f, now = _time + dt;
         _time = now;
 
@@ -94,11 +233,58 @@ public class Emitter
             generator = null;
             onExhausted.emit(this);
         }
-        if (_buffer.apply(effectors, now, dt) == 0 && generator == null) {
+
+        // if we're culled, skip applying our effectors (or apply them only now and again), and
+        // when we next apply them, do so over all the time that has elapsed since we last did, in
+        // steps of at most coarseStep so that effectors which act once per application (like
+        // drag) act at least that often
+        _pendingDt += dt;
+        int live = 0;
+        if (!_culled || (_culling == Culling.COARSE && _pendingDt >= coarseStep)) {
+            // (we allow a step to be a hair longer than coarseStep, so that rounding error in the
+            // time we've accumulated doesn't cost us an extra step)
+            float pending = _pendingDt;
+            int steps = (pending > dt && coarseStep > 0 && pending > coarseStep) ?
+                (int)Math.ceil(pending / coarseStep - 0.001f) : 1;
+            float step = pending / steps;
+            for (int ss = steps-1; ss >= 0; ss--) {
+                live = _buffer.apply(effectors, now - ss*step, step);
+            }
+            _pendingDt = 0;
+            // we're not rendering, so our particle bounds won't otherwise be updated
+            if (_culled) _buffer.updateBounds();
+        } else live = _buffer.expireAll(now);
+
+        if (live == 0 && generator == null) {
             onEmpty.emit(this);
         }
     }
 
+    protected boolean computeCulled () {
+        for (Layer ll = layer; ll != null; ll = ll.parent()) {
+            if (!ll.visible() || ll.alpha() <= 0) return true;
+        }
+        if (_viewport == null || _buffer.liveCount() == 0) return false;
+        IRectangle bounds = _buffer.bounds(), view = _viewport;
+        float margin = _margin;
+        return bounds.maxX() + margin < view.x() || bounds.x() - margin > view.maxX() ||
+            bounds.maxY() + margin < view.y() || bounds.y() - margin > view.maxY();
+    }
+
     protected final ParticleBuffer _buffer;
+    protected final Tile _tile;
     protected float _time;
+
+    protected Culling _culling = Culling.NONE;
+    protected IRectangle _viewport;
+    protected float _margin;
+    protected boolean _culled;
+    // the time elapsed since we last applied our effectors
+    protected float _pendingDt;
+
+    // the budget we're in (or null), our priority therein, and the fractional particles that
+    // it has scaled away from our emission, which we'll add once they make a whole particle
+    protected ParticleBudget _budget;
+    protected int _priority;
+    protected float _emitAccum;
 }
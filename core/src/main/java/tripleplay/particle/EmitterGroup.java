@@ -0,0 +1,111 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import playn.core.QuadBatch;
+import playn.core.Surface;
+import playn.scene.Layer;
+
+/**
+ * Renders the particles of many emitters with a single particle batch. An emitter renders its
+ * own particles by pushing its batch onto the surface, which flushes whatever was being drawn
+ * before it, and popping it again, which flushes its particles. Thus every emitter costs at least
+ * one draw call. Emitters created with a group instead render nothing from their own layers; the
+ * group's {@link #layer} renders all of them, ordered by texture, so that emitters which share a
+ * texture are drawn together in one call. Example usage:
+ *
+ * <pre>{@code
+ * EmitterGroup sparks = new EmitterGroup(batch);
+ * scene.add(sparks.layer);
+ * Emitter emitter = new Emitter(sparks, paint, new ParticleBuffer(100), sparkTile);
+ * // the emitter's layer must still be added to the scene graph, to drive its simulation
+ * scene.add(emitter.layer);
+ * }</pre>
+ *
+ * <p>The particles of all of a group's emitters are drawn where the group's layer is drawn in the
+ * scene graph. An emitter's particles are drawn only while its layer is added to the scene graph
+ * and visible, along with all of its ancestors. As with an emitter which renders itself, the
+ * transform and alpha of the emitter's layer (and its ancestors) are not applied to its
+ * particles: they are positioned by their own transforms (see {@link
+ * tripleplay.particle.init.Transform#layer} to start particles at a layer's position) and
+ * tinted by their own colors.</p>
+ */
+public class EmitterGroup
+{
+    /** The batch used to render this group's particles. */
+    public final ParticleBatch batch;
+
+    /** The layer which renders this group's particles. */
+    public final Layer layer = new Layer() {
+        @Override protected void paintImpl (Surface surface) { render(surface); }
+    };
+
+    /** Creates a group which renders its particles with {@code batch}. */
+    public EmitterGroup (ParticleBatch batch) {
+        this.batch = batch;
+    }
+
+    /** Returns the number of emitters in this group. */
+    public int size () {
+        return _emitters.size();
+    }
+
+    /** Adds {@code emitter} to this group. This is called by the emitter's constructor. */
+    void add (Emitter emitter) {
+        _emitters.add(emitter);
+        _sorted = false;
+    }
+
+    protected void render (Surface surface) {
+        validate();
+        QuadBatch obatch = surface.pushBatch(batch);
+        for (int ii = 0, ll = _emitters.size(); ii < ll; ii++) {
+            Emitter emitter = _emitters.get(ii);
+            if (isShown(emitter)) emitter.render(batch);
+        }
+        surface.popBatch(obatch);
+    }
+
+    /** Returns whether {@code emitter}'s layer is added to the scene graph, and it and all of its
+     * ancestors are visible. */
+    protected boolean isShown (Emitter emitter) {
+        if (emitter.layer.state.get() != Layer.State.ADDED) return false;
+        for (Layer layer = emitter.layer; layer != null; layer = layer.parent()) {
+            if (!layer.visible()) return false;
+        }
+        return true;
+    }
+
+    /** Removes emitters whose layers have been disposed, and sorts our emitters by texture if
+     * any have been added since we last did so. */
+    protected void validate () {
+        for (int ii = 0; ii < _emitters.size(); ii++) {
+            if (_emitters.get(ii).layer.state.get() == Layer.State.DISPOSED) _emitters.remove(ii--);
+        }
+        // we sort when rendering, rather than as emitters are added, so that we don't ask for an
+        // emitter's texture before it's needed; the sort is stable, so emitters which share a
+        // texture stay in the order in which they were added
+        if (!_sorted) {
+            Collections.sort(_emitters, BY_TEXTURE);
+            _sorted = true;
+        }
+    }
+
+    protected final List<Emitter> _emitters = new ArrayList<Emitter>();
+    protected boolean _sorted = true;
+
+    protected static final Comparator<Emitter> BY_TEXTURE = new Comparator<Emitter>() {
+        public int compare (Emitter e1, Emitter e2) {
+            int id1 = e1._tile.texture().id, id2 = e2._tile.texture().id;
+            return (id1 < id2) ? -1 : ((id1 == id2) ? 0 : 1);
+        }
+    };
+}
@@ -19,6 +19,8 @@ public class ParticleBatch extends TriangleBatch
     }
 
     public ParticleBatch prepare (Tile tile, int maxQuads) {
+        // our element indices are shorts, so flush before they would wrap around
+        if (vertPos/vertexSize() + maxQuads*4 > MAX_VERTS) flush();
         setTexture(tile.texture());
         _sx = tile.sx(); _sy = tile.sy();
         _tx = tile.tx(); _ty = tile.ty();
@@ -43,4 +45,7 @@ public class ParticleBatch extends TriangleBatch
     }
 
     protected float _sx, _sy, _tx, _ty;
+
+    /** The number of vertices addressable by our (16-bit) element indices. */
+    protected static final int MAX_VERTS = 65536;
 }
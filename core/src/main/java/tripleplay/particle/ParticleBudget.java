@@ -0,0 +1,189 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import react.Signal;
+import react.Slot;
+
+import playn.core.Clock;
+import playn.core.Platform;
+import playn.scene.Layer;
+
+/**
+ * Limits the total number of particles of many emitters, and optionally the time spent
+ * simulating and rendering them. Emitters are added to a budget with a priority: zero is the
+ * lowest, and higher numbers are more important. While the budget is exceeded, its throttle
+ * {@link #level} rises, by {@link #adjustRate} per second, and once usage falls below
+ * {@link #easeLoad} of the budget, it falls at the same rate. The number of particles added by an
+ * emitter of priority {@code p} is scaled by one minus the amount by which the level exceeds
+ * {@code p}, clamped to {@code [0, 1]}. Thus the lowest priority emitters are throttled first,
+ * and stop emitting entirely before those of the next priority are throttled at all. This
+ * applies to every generator, since it scales the count passed to {@link Emitter#addParticles}.
+ *
+ * <p>Throttling emission takes effect only as existing particles expire. If {@link #killOldest}
+ * is set, whenever the total number of particles exceeds the budget, the excess is immediately
+ * killed, oldest first, from the lowest priority emitters first.</p>
+ *
+ * <p>Emitters are removed from the budget once their layer is disposed.</p>
+ */
+public class ParticleBudget
+{
+    /** The rate, in priority levels per second, at which the throttle {@link #level} changes. */
+    public float adjustRate = 2;
+
+    /** The fraction of the budget below which usage must fall before throttling eases. */
+    public float easeLoad = 0.9f;
+
+    /** Whether to kill the oldest particles of the lowest priority emitters when the total
+     * number of particles exceeds the budget. */
+    public boolean killOldest;
+
+    /**
+     * Creates a budget which limits its emitters to a total of {@code maxParticles}, and which
+     * updates itself every time {@code paint} is emitted.
+     */
+    public ParticleBudget (Signal<Clock> paint, int maxParticles) {
+        _maxParticles = maxParticles;
+        paint.connect(new Slot<Clock>() {
+            public void onEmit (Clock clock) { update(clock.dt/1000f); }
+        });
+    }
+
+    /**
+     * Also limits the time spent simulating and rendering this budget's emitters to {@code
+     * millis} per frame, as measured with {@code plat}. Rendering time includes only the time
+     * spent adding particles to a batch, not the time spent drawing them. Pass a null platform to
+     * remove the time limit.
+     */
+    public void setTimeLimit (Platform plat, float millis) {
+        _plat = plat;
+        _maxMillis = millis;
+    }
+
+    /**
+     * Adds {@code emitter} to this budget with the specified priority (zero or greater). If it is
+     * already in a budget, it is first removed from that budget.
+     */
+    public void add (Emitter emitter, int priority) {
+        if (priority < 0) throw new IllegalArgumentException("Priority must be >= 0: " + priority);
+        if (emitter._budget != null) emitter._budget.remove(emitter);
+        emitter._budget = this;
+        emitter._priority = priority;
+        // keep our emitters sorted by priority, lowest first
+        int idx = _emitters.size();
+        while (idx > 0 && _emitters.get(idx-1)._priority > priority) idx--;
+        _emitters.add(idx, emitter);
+        _maxPriority = Math.max(_maxPriority, priority);
+    }
+
+    /** Removes {@code emitter} from this budget. */
+    public void remove (Emitter emitter) {
+        if (_emitters.remove(emitter)) {
+            emitter._budget = null;
+            updateMaxPriority();
+        }
+    }
+
+    /** Returns the number of emitters in this budget. */
+    public int size () {
+        return _emitters.size();
+    }
+
+    /** Returns the total number of live particles in this budget's emitters, as of its last
+     * update. */
+    public int liveCount () {
+        return _live;
+    }
+
+    /** Returns the throttle level: zero when no emitter is throttled, and one more than the
+     * highest priority when every emitter is. */
+    public float level () {
+        return _level;
+    }
+
+    /** Returns the factor by which emission is currently scaled for emitters of {@code
+     * priority}. */
+    public float emitScale (int priority) {
+        return Math.max(0, Math.min(1, priority + 1 - _level));
+    }
+
+    /** Recomputes our highest priority after emitters are removed, and caps our level to
+     * match. */
+    protected void updateMaxPriority () {
+        // our emitters are sorted by priority, so the last has the highest
+        int size = _emitters.size();
+        _maxPriority = (size == 0) ? 0 : _emitters.get(size-1)._priority;
+        _level = Math.min(_level, _maxPriority + 1);
+    }
+
+    /**
+     * Updates the throttle level, and kills excess particles if so configured. This is called
+     * automatically when the paint signal supplied at construction is emitted.
+     *
+     * @param dt the elapsed time since the last update (in seconds).
+     */
+    protected void update (float dt) {
+        int live = 0, count = _emitters.size();
+        for (int ii = 0; ii < _emitters.size(); ii++) {
+            Emitter emitter = _emitters.get(ii);
+            if (emitter.layer.state.get() == Layer.State.DISPOSED) {
+                _emitters.remove(ii--);
+                emitter._budget = null;
+            } else live += emitter._buffer.liveCount();
+        }
+        if (_emitters.size() != count) updateMaxPriority();
+
+        float load = live / (float)_maxParticles;
+        if (_plat != null) load = Math.max(load, (float)(_millis / _maxMillis));
+        _millis = 0;
+        if (load > 1) _level = Math.min(_maxPriority + 1, _level + adjustRate * dt);
+        else if (load < easeLoad) _level = Math.max(0, _level - adjustRate * dt);
+
+        // kill the excess from our lowest priority emitters first
+        if (killOldest && live > _maxParticles) {
+            for (int ii = 0, ll = _emitters.size(); ii < ll && live > _maxParticles; ii++) {
+                live -= _emitters.get(ii)._buffer.killOldest(live - _maxParticles);
+            }
+        }
+        _live = live;
+    }
+
+    /** Scales the number of particles that {@code emitter} is about to add, accumulating any
+     * fractional particles to be added later. */
+    int scaleEmission (Emitter emitter, int count) {
+        float scale = emitScale(emitter._priority);
+        if (scale >= 1) return count;
+        float accum = emitter._emitAccum + count * scale;
+        int scaled = (int)accum;
+        emitter._emitAccum = accum - scaled;
+        return scaled;
+    }
+
+    /** Returns the current time, for measuring the time spent by our emitters. */
+    double time () {
+        return (_plat == null) ? 0 : _plat.time();
+    }
+
+    /** Notes time spent by one of our emitters, since {@code start} (obtained from
+     * {@link #time}). */
+    void noteTime (double start) {
+        if (_plat != null) _millis += _plat.time() - start;
+    }
+
+    protected final int _maxParticles;
+    protected final List<Emitter> _emitters = new ArrayList<Emitter>();
+    protected int _maxPriority, _live;
+    protected float _level;
+
+    // the platform used to measure time (or null) and our time limit per frame, in millis
+    protected Platform _plat;
+    protected float _maxMillis;
+    // the time spent by our emitters since our last update, in millis
+    protected double _millis;
+}
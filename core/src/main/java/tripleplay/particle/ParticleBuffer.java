@@ -5,10 +5,16 @@
 
 package tripleplay.particle;
 
+import java.util.Arrays;
 import java.util.List;
 
+import pythagoras.f.IRectangle;
+import pythagoras.f.Rectangle;
+
 import playn.core.Color;
 
+import tripleplay.util.TaskPool;
+
 /**
  * Contains the basic metadata for an array of particles: position, velocity, scale, rotation,
  * birth time, lifespan.
@@ -48,9 +54,15 @@ public class ParticleBuffer
     /** The total number of fields per particle. */
     public static final int NUM_FIELDS = GREEN_BLUE+1;
 
-    /** The particle data. */
+    /** The particle data, stored as an array of structures: {@link #NUM_FIELDS} consecutive
+     * values per particle. This is null if this buffer stores its data in {@link #fields}. */
     public final float[] data;
 
+    /** The particle data, stored as a structure of arrays: one array per field, indexed by
+     * particle. For example, the x velocity of the {@code i}th particle is {@code
+     * fields[VEL_X][i]}. This is null if this buffer stores its data in {@link #data}. */
+    public final float[][] fields;
+
     /** A liveness flag for each particle. */
     public final int[] alive;
 
@@ -82,11 +94,56 @@ public class ParticleBuffer
         data[start + TY]  = pm01 *  tx + pm11 *  ty + pty;
     }
 
-    /** Creates a particle buffer that can hold up to {@code maxParticles} particles. */
+    /** Creates a particle buffer that can hold up to {@code maxParticles} particles, and which
+      * stores them as an array of structures (in {@link #data}). */
     public ParticleBuffer (int maxParticles) {
+        this(maxParticles, false);
+    }
+
+    /**
+     * Creates a particle buffer that can hold up to {@code maxParticles} particles.
+     *
+     * @param structOfArrays if true, the particles are stored as a structure of arrays (in {@link
+     * #fields}), otherwise as an array of structures (in {@link #data}). Effectors which implement
+     * {@link Effector#applyAll} process the former much more quickly. Effectors and initializers
+     * which only implement the per-particle API are also supported, but each particle is copied
+     * into and out of a temporary array around every call.
+     */
+    public ParticleBuffer (int maxParticles, boolean structOfArrays) {
         _maxParticles = maxParticles;
-        data = new float[maxParticles * NUM_FIELDS];
+        if (structOfArrays) {
+            data = null;
+            fields = new float[NUM_FIELDS][maxParticles];
+            _scratch = new float[NUM_FIELDS];
+        } else {
+            data = new float[maxParticles * NUM_FIELDS];
+            fields = null;
+            _scratch = null;
+        }
         alive = new int[maxParticles/32+1];
+        _lastMask = (1 << maxParticles % 32) - 1;
+    }
+
+    /** Returns the maximum number of particles this buffer can hold. */
+    public int capacity () {
+        return _maxParticles;
+    }
+
+    /**
+     * Configures this buffer to apply its effectors in parallel using {@code pool}. When at least
+     * {@code threshold} particles are alive, the range of living particles is split into chunks
+     * (on {@link #alive} word boundaries) which are processed concurrently, each chunk by every
+     * effector in turn. Below the threshold, or if {@code pool} is null, effectors are applied on
+     * the calling thread. Expiring dead particles always happens on the calling thread.
+     *
+     * <p>The effectors must then be safe to call concurrently for different ranges of particles:
+     * their {@link Effector#apply} and {@link Effector#applyAll} must read and write only the
+     * fields of the particles they are passed, and must not modify any other state. All of the
+     * effectors in the {@code tripleplay.particle.effect} package meet these requirements.</p>
+     */
+    public void setTaskPool (TaskPool pool, int threshold) {
+        _pool = pool;
+        _threshold = Math.max(threshold, 1);
     }
 
     /** Returns true if the specified particle is alive. */
@@ -96,93 +153,370 @@ public class ParticleBuffer
 
     /** Sets the particle in question to alive or not. */
     public void setAlive (int partidx, boolean isAlive) {
+        int word = partidx/32, mask = 1 << partidx % 32;
+        if (((alive[word] & mask) != 0) == isAlive) return;
         if (isAlive) {
-            alive[partidx/32] |= (1 << partidx % 32);
+            alive[word] |= mask;
+            _live++;
+            if (word >= _highWord) _highWord = word+1;
+            // we don't know when this particle will die, nor where it is
+            _lastDeath = Float.POSITIVE_INFINITY;
+            _minX = _minY = Float.NEGATIVE_INFINITY;
+            _maxX = _maxY = Float.POSITIVE_INFINITY;
         } else {
-            alive[partidx/32] &= ~(1 << partidx % 32);
+            alive[word] &= ~mask;
+            _live--;
+            if (word < _firstFree) _firstFree = word;
         }
     }
 
+    /** Returns the number of live particles in this buffer. This does not account for particles
+      * whose lifespan has expired since the last call to {@link #apply}. */
+    public int liveCount () {
+        return _live;
+    }
+
     public boolean isFull () {
         return _live >= _maxParticles;
     }
 
-    /** Adds {@code count} particles to this buffer, and initializes them with {@code initters}. */
+    /**
+     * Returns the bounds of the positions (the transform translations) of this buffer's live
+     * particles. These are computed by {@link #render} and {@link #updateBounds}, and expanded to
+     * include particles added since. They do not account for the size of the particles' quads.
+     * If there are no live particles, the bounds are empty.
+     */
+    public IRectangle bounds () {
+        if (_minX > _maxX) _bounds.setBounds(0, 0, 0, 0);
+        else _bounds.setBounds(_minX, _minY, _maxX - _minX, _maxY - _minY);
+        return _bounds;
+    }
+
+    /** Recomputes {@link #bounds} from the positions of the live particles. */
+    public void updateBounds () {
+        resetBounds();
+        boolean aos = (data != null);
+        float[] xs = aos ? data : fields[TX], ys = aos ? data : fields[TY];
+        int stride = aos ? NUM_FIELDS : 1, xoff = aos ? TX : 0, yoff = aos ? TY : 0;
+        for (int aa = 0, words = _highWord; aa < words; aa++) {
+            for (int bits = alive[aa]; bits != 0; bits &= bits-1) {
+                int ppos = (aa*32 + Integer.numberOfTrailingZeros(bits)) * stride;
+                addToBounds(xs[ppos+xoff], ys[ppos+yoff]);
+            }
+        }
+    }
+
+    /**
+     * Marks every particle dead if all of their lifespans will have expired at {@code now}.
+     * Unlike {@link #apply}, this does not visit the particles, so it costs almost nothing, but
+     * it only notices expired particles when all of them have expired.
+     *
+     * @return the number of live particles, which includes expired particles unless all have.
+     */
+    public int expireAll (float now) {
+        if (_live > 0 && now > _lastDeath) {
+            for (int aa = 0, words = _highWord; aa < words; aa++) {
+                if (alive[aa] != 0 && aa < _firstFree) _firstFree = aa;
+                alive[aa] = 0;
+            }
+            _live = _highWord = 0;
+            resetBounds();
+        }
+        return _live;
+    }
+
+    /**
+     * Kills the {@code count} oldest live particles (those born earliest), or all of them if
+     * there are fewer than {@code count}. This sorts the birth times of the live particles, so it
+     * is not cheap; it is meant for occasionally shedding particles when over budget.
+     *
+     * @return the number of particles killed.
+     */
+    public int killOldest (int count) {
+        if (count <= 0 || _live == 0) return 0;
+        boolean aos = (data != null);
+        float[] births = aos ? data : fields[BIRTH];
+        int stride = aos ? NUM_FIELDS : 1, boff = aos ? BIRTH : 0;
+
+        // find the birth time of the youngest particle to be killed, and how many particles with
+        // that birth time are to be killed (others may share it)
+        float cutoff = Float.POSITIVE_INFINITY;
+        int ties = count;
+        if (count < _live) {
+            if (_births.length < _live) _births = new float[_live];
+            int nn = 0;
+            for (int aa = 0, words = _highWord; aa < words; aa++) {
+                for (int bits = alive[aa]; bits != 0; bits &= bits-1) {
+                    int ppos = (aa*32 + Integer.numberOfTrailingZeros(bits)) * stride;
+                    _births[nn++] = births[ppos+boff];
+                }
+            }
+            Arrays.sort(_births, 0, nn);
+            cutoff = _births[count-1];
+            int first = count-1;
+            while (first > 0 && _births[first-1] == cutoff) first--;
+            ties = count - first;
+        }
+
+        int killed = 0;
+        for (int aa = 0, words = _highWord; aa < words && killed < count; aa++) {
+            int live = alive[aa];
+            for (int bits = live; bits != 0; bits &= bits-1) {
+                int bit = Integer.numberOfTrailingZeros(bits);
+                float birth = births[(aa*32 + bit) * stride + boff];
+                if (birth < cutoff || (birth == cutoff && ties-- > 0)) {
+                    live &= ~(1 << bit);
+                    killed++;
+                }
+            }
+            if (live != alive[aa]) {
+                alive[aa] = live;
+                if (aa < _firstFree) _firstFree = aa;
+            }
+        }
+        _live -= killed;
+        return killed;
+    }
+
+    /** Adds {@code count} particles to this buffer, and initializes them with {@code initters}.
+      * Particles are placed in the lowest numbered free slots. */
     public void add (int count, float now, List<? extends Initializer> initters) {
         if (isFull()) return;
-        // TODO: keep track of a last added position and start from there
-        int pp = 0, ppos = 0, icount = initters.size(), initted = 0;
-        for (int aa = 0; aa < alive.length && initted < count; aa++) {
-            int live = alive[aa], mask = 1;
-            if (live == 0xFFFFFFFF) {
-                pp += 32;
-                ppos += 32*NUM_FIELDS;
-                continue; // all full
-            }
-            for (int end = Math.min(pp+32, _maxParticles); pp < end && initted < count;
-                 pp++, ppos += NUM_FIELDS, mask <<= 1) {
-                if ((live & mask) != 0) continue;
-                live |= mask;
-                data[ppos+BIRTH] = now;
-                for (int ii = 0; ii < icount; ii++) {
-                    initters.get(ii).init(pp, data, ppos);
+        int icount = initters.size(), initted = 0, aa = _firstFree, words = alive.length;
+        for (; aa < words && initted < count; aa++) {
+            int live = alive[aa], free = ~live;
+            if (aa == words-1) free &= _lastMask; // ignore slots beyond our capacity
+            if (free == 0) continue; // all full
+            // claim the free slots in this word, lowest first, one set bit at a time
+            for (; free != 0 && initted < count; free &= free-1) {
+                int bit = Integer.numberOfTrailingZeros(free), pp = aa*32 + bit;
+                live |= (1 << bit);
+                if (data != null) {
+                    int ppos = pp*NUM_FIELDS;
+                    data[ppos+BIRTH] = now;
+                    for (int ii = 0; ii < icount; ii++) {
+                        initters.get(ii).init(pp, data, ppos);
+                    }
+                    noteAdded(data, ppos);
+                } else {
+                    gather(pp, _scratch);
+                    _scratch[BIRTH] = now;
+                    for (int ii = 0; ii < icount; ii++) initters.get(ii).init(pp, _scratch, 0);
+                    scatter(pp, _scratch);
+                    noteAdded(_scratch, 0);
                 }
                 initted++;
             }
             alive[aa] = live;
+            if (aa >= _highWord) _highWord = aa+1;
+            // if this word still has free slots, the next add should start here
+            if (free != 0) break;
         }
+        _firstFree = aa;
+        _live += initted;
     }
 
     /**
-     * Applies the supplied effectors to all (live) particles in this buffer.
+     * Applies the supplied effectors to all (live) particles in this buffer. Particles whose
+     * lifespan has expired are first marked as dead, then each effector is applied in turn, via
+     * {@link Effector#applyAll}, to the range of particles that contains all living particles.
      *
      * @return the number of live particles to which the effectors were applied.
      */
     public int apply (List<? extends Effector> effectors, float now, float dt) {
-        int pp = 0, ppos = 0, ecount = effectors.size(), living = 0;
-        for (int aa = 0; aa < alive.length; aa++) {
-            int live = alive[aa], mask = 1, died = 0;
-            for (int end = pp+32; pp < end; pp++, ppos += NUM_FIELDS, mask <<= 1) {
-                // if this particle is not alive, skip it
-                if ((live & mask) == 0) continue;
-
-                // if this particle has died, mark it as such
-                if (now - data[ppos+BIRTH] > data[ppos+LIFESPAN]) {
-                    live &= ~mask;
-                    died++;
-                    continue;
-                }
-
-                // the particle lives, apply the effectors
-                for (int ee = 0; ee < ecount; ee++) {
-                    effectors.get(ee).apply(pp, data, ppos, now, dt);
-                }
-                living++;
+        // note: in struct of arrays mode, we read BIRTH and LIFESPAN from their field arrays with
+        // a stride of one, otherwise from our data array with a stride of NUM_FIELDS
+        boolean aos = (data != null);
+        float[] births = aos ? data : fields[BIRTH], lifespans = aos ? data : fields[LIFESPAN];
+        int stride = aos ? NUM_FIELDS : 1, boff = aos ? BIRTH : 0, loff = aos ? LIFESPAN : 0;
+        int living = 0, high = 0;
+        float lastDeath = Float.NEGATIVE_INFINITY;
+        for (int aa = 0, words = _highWord; aa < words; aa++) {
+            int live = alive[aa];
+            if (live == 0) continue;
+            // visit only the live particles in this word, killing any whose time has come
+            for (int bits = live; bits != 0; bits &= bits-1) {
+                int bit = Integer.numberOfTrailingZeros(bits), ppos = (aa*32 + bit) * stride;
+                float birth = births[ppos+boff], lifespan = lifespans[ppos+loff];
+                if (now - birth > lifespan) live &= ~(1 << bit);
+                else lastDeath = Math.max(lastDeath, birth + lifespan);
             }
 
             // if we killed off any particles, update the liveness array
-            if (died > 0) {
+            if (live != alive[aa]) {
                 alive[aa] = live;
+                if (aa < _firstFree) _firstFree = aa;
+            }
+            if (live != 0) {
+                living += Integer.bitCount(live);
+                high = aa+1;
+            }
+        }
+        _highWord = high;
+        _live = living;
+        _lastDeath = lastDeath;
+
+        // now apply the effectors to the range that contains the living particles
+        if (living > 0) {
+            int end = high*32 - Integer.numberOfLeadingZeros(alive[high-1]);
+            int chunks = (_pool == null || living < _threshold) ? 1 :
+                Math.min(_pool.parallelism(), high);
+            if (chunks > 1) applyParallel(effectors, chunks, end, now, dt);
+            else {
+                for (int ee = 0, ecount = effectors.size(); ee < ecount; ee++) {
+                    effectors.get(ee).applyAll(this, 0, end, now, dt, _scratch);
+                }
             }
         }
         return living;
     }
 
+    /**
+     * Applies {@code effector} to each live particle with index in {@code [from, to)}, via its
+     * per-particle {@link Effector#apply} method. This is the default implementation of {@link
+     * Effector#applyAll}.
+     *
+     * @param scratch an array of at least {@link #NUM_FIELDS} values, into which each particle's
+     * fields are copied in struct of arrays mode. It must not be used by any concurrent call.
+     */
+    public void applyEach (Effector effector, int from, int to, float now, float dt,
+                           float[] scratch) {
+        if (from >= to) return;
+        for (int aa = from/32, last = (to-1)/32; aa <= last; aa++) {
+            int bits = alive[aa];
+            if (aa == from/32) bits &= -1 << (from % 32);
+            if (aa == last) bits &= -1 >>> (31 - (to-1) % 32);
+            for (; bits != 0; bits &= bits-1) {
+                int pp = aa*32 + Integer.numberOfTrailingZeros(bits);
+                if (data != null) effector.apply(pp, data, pp*NUM_FIELDS, now, dt);
+                else {
+                    gather(pp, scratch);
+                    effector.apply(pp, scratch, 0, now, dt);
+                    scatter(pp, scratch);
+                }
+            }
+        }
+    }
+
     /** Renders the particles to the supplied shader. */
     public void render (ParticleBatch batch, float width, float height) {
         float ql = -width/2, qt = -height/2, qr = width/2, qb = height/2;
-        int pp = 0, ppos = 0, rendered = 0;
-        for (int aa = 0; aa < alive.length; aa++) {
-            int live = alive[aa], mask = 1;
-            for (int end = pp+32; pp < end; pp++, ppos += NUM_FIELDS, mask <<= 1) {
-                if ((live & mask) == 0) continue;
-                batch.addParticle(ql, qt, qr, qb, data, ppos);
-                rendered++;
+        // we recompute our bounds as we go, since we're visiting every particle anyway
+        resetBounds();
+        for (int aa = 0, words = _highWord; aa < words; aa++) {
+            for (int bits = alive[aa]; bits != 0; bits &= bits-1) {
+                int pp = aa*32 + Integer.numberOfTrailingZeros(bits);
+                if (data != null) {
+                    int ppos = pp*NUM_FIELDS;
+                    batch.addParticle(ql, qt, qr, qb, data, ppos);
+                    addToBounds(data[ppos+TX], data[ppos+TY]);
+                } else {
+                    gather(pp, _scratch);
+                    batch.addParticle(ql, qt, qr, qb, _scratch, 0);
+                    addToBounds(_scratch[TX], _scratch[TY]);
+                }
             }
         }
-        _live = rendered;
+    }
+
+    /** Notes the death time and position of a newly added particle. */
+    protected void noteAdded (float[] pdata, int ppos) {
+        _lastDeath = Math.max(_lastDeath, pdata[ppos+BIRTH] + pdata[ppos+LIFESPAN]);
+        addToBounds(pdata[ppos+TX], pdata[ppos+TY]);
+    }
+
+    protected void addToBounds (float x, float y) {
+        if (x < _minX) _minX = x;
+        if (x > _maxX) _maxX = x;
+        if (y < _minY) _minY = y;
+        if (y > _maxY) _maxY = y;
+    }
+
+    protected void resetBounds () {
+        _minX = _minY = Float.POSITIVE_INFINITY;
+        _maxX = _maxY = Float.NEGATIVE_INFINITY;
+    }
+
+    /** Splits {@code [0, end)} into {@code chunks} ranges of whole alive words and applies the
+      * effectors to them in parallel using our task pool. */
+    protected void applyParallel (List<? extends Effector> effectors, int chunks, int end,
+                                  float now, float dt) {
+        if (_tasks.length < chunks) {
+            ApplyTask[] tasks = new ApplyTask[chunks];
+            java.lang.System.arraycopy(_tasks, 0, tasks, 0, _tasks.length);
+            for (int ii = _tasks.length; ii < chunks; ii++) tasks[ii] = new ApplyTask();
+            _tasks = tasks;
+        }
+        int words = (end + 31) / 32, chunkWords = (words + chunks - 1) / chunks;
+        int count = 0;
+        for (int from = 0; from < end; from += chunkWords*32) {
+            _tasks[count++].init(effectors, from, Math.min(from + chunkWords*32, end), now, dt);
+        }
+        try {
+            _pool.invokeAll(_tasks, count);
+        } finally {
+            for (int ii = 0; ii < count; ii++) _tasks[ii].init(null, 0, 0, 0, 0);
+        }
+    }
+
+    /** Copies the fields of the {@code pp}th particle into {@code scratch}. */
+    protected void gather (int pp, float[] scratch) {
+        for (int ff = 0; ff < NUM_FIELDS; ff++) scratch[ff] = fields[ff][pp];
+    }
+
+    /** Copies {@code scratch} into the fields of the {@code pp}th particle. */
+    protected void scatter (int pp, float[] scratch) {
+        for (int ff = 0; ff < NUM_FIELDS; ff++) fields[ff][pp] = scratch[ff];
+    }
+
+    /** Applies a list of effectors to a single chunk of particles. */
+    protected final class ApplyTask implements Runnable {
+        public void init (List<? extends Effector> effectors, int from, int to,
+                          float now, float dt) {
+            _effectors = effectors;
+            _from = from;
+            _to = to;
+            _now = now;
+            _dt = dt;
+        }
+        @Override public void run () {
+            for (int ee = 0, ecount = _effectors.size(); ee < ecount; ee++) {
+                _effectors.get(ee).applyAll(ParticleBuffer.this, _from, _to, _now, _dt, _scratch);
+            }
+        }
+        // the scratch array passed to our effectors, which our chunk must not share
+        private final float[] _scratch = new float[NUM_FIELDS];
+        private List<? extends Effector> _effectors;
+        private int _from, _to;
+        private float _now, _dt;
     }
 
     protected final int _maxParticles;
+    // the number of live particles, maintained as particles are added and killed
     protected int _live;
+    // one past the index of the highest word of alive which may contain a live particle
+    protected int _highWord;
+    // the time at which the last of our live particles will expire
+    protected float _lastDeath = Float.NEGATIVE_INFINITY;
+    // the bounds of our live particles' positions (min > max when we have none)
+    protected float _minX = Float.POSITIVE_INFINITY, _minY = Float.POSITIVE_INFINITY;
+    protected float _maxX = Float.NEGATIVE_INFINITY, _maxY = Float.NEGATIVE_INFINITY;
+    protected final Rectangle _bounds = new Rectangle();
+
+    // the index of the lowest word of alive which may contain a free slot; every word below it
+    // is full. add() starts its search here, so that spawning does not rescan full words
+    protected int _firstFree;
+    // the slots in the last word of alive which are within our capacity
+    protected final int _lastMask;
+
+    // holds a single particle's fields when using per-particle APIs in struct of arrays mode
+    protected final float[] _scratch;
+    // holds the birth times of our live particles while killOldest sorts them
+    protected float[] _births = new float[0];
+
+    // the pool used to apply effectors in parallel (or null) and the live particle threshold
+    protected TaskPool _pool;
+    protected int _threshold;
+    // tasks used by applyParallel, reused from frame to frame
+    protected ApplyTask[] _tasks = new ApplyTask[0];
 }
@@ -0,0 +1,90 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle.effect;
+
+import tripleplay.util.Interpolator;
+
+/**
+ * A function of a particle's normalized age (zero at its birth and one at the end of its
+ * lifespan), sampled into a table at evenly spaced ages. Effectors which vary a particle's
+ * properties over its life precompute their values from a table when they are created, so that
+ * updating a particle costs one table lookup rather than evaluating an interpolator.
+ */
+public final class AgeTable
+{
+    /** The number of samples used when none is specified. A particle's color components have
+     * only 256 possible values, so more samples would rarely be noticeable. */
+    public static final int DEFAULT_SAMPLES = 256;
+
+    /** Returns a table which interpolates from {@code start} to {@code end} over a particle's
+     * life, using {@code interp}. */
+    public static AgeTable of (Interpolator interp, float start, float end) {
+        return of(interp, start, end, DEFAULT_SAMPLES);
+    }
+
+    /** Returns a table of {@code samples} values which interpolates from {@code start} to {@code
+     * end} over a particle's life, using {@code interp}. */
+    public static AgeTable of (Interpolator interp, float start, float end, int samples) {
+        if (samples < 2) throw new IllegalArgumentException("Need at least two samples.");
+        float[] values = new float[samples];
+        for (int ii = 0; ii < samples; ii++) {
+            values[ii] = interp.apply(start, end - start, ii, samples-1);
+        }
+        return new AgeTable(values);
+    }
+
+    /** Returns a table which interpolates linearly between {@code keys}, which are evenly spaced
+     * over a particle's life (the first at its birth and the last at its death). */
+    public static AgeTable keys (float... keys) {
+        if (keys.length == 0) throw new IllegalArgumentException("Need at least one key.");
+        float[] values = new float[DEFAULT_SAMPLES];
+        for (int ii = 0; ii < DEFAULT_SAMPLES; ii++) values[ii] = sampleKeys(keys, ii);
+        return new AgeTable(values);
+    }
+
+    /** The sampled values. The {@code i}th value is for normalized age {@code i/(length-1)}. */
+    public final float[] values;
+
+    /** Creates a table with the supplied samples, which must number at least two. */
+    public AgeTable (float[] values) {
+        if (values.length < 2) throw new IllegalArgumentException("Need at least two samples.");
+        this.values = values;
+    }
+
+    /** Returns the number of samples in this table. */
+    public int size () {
+        return values.length;
+    }
+
+    /** Returns the index of the sample nearest to {@code age} in a life of {@code lifespan}. A
+     * particle whose age exceeds its lifespan (or whose lifespan is zero) gets the last sample. */
+    public int index (float age, float lifespan) {
+        return index(age, lifespan, values.length-1);
+    }
+
+    /** Returns the value of this table for {@code age} in a life of {@code lifespan}. */
+    public float get (float age, float lifespan) {
+        return values[index(age, lifespan)];
+    }
+
+    /** Computes {@link #index} for a table whose last index is {@code last}. Effectors use this
+     * in their inner loops with their own precomputed tables. */
+    public static int index (float age, float lifespan, int last) {
+        if (!(age < lifespan)) return last;
+        int idx = (int)(age * last / lifespan + 0.5f);
+        return (idx < 0) ? 0 : idx;
+    }
+
+    /** Samples the piecewise linear function through evenly spaced {@code keys} at sample {@code
+     * ii} of {@link #DEFAULT_SAMPLES}. */
+    static float sampleKeys (float[] keys, int ii) {
+        if (keys.length == 1) return keys[0];
+        float pos = ii * (keys.length-1) / (float)(DEFAULT_SAMPLES-1);
+        int kk = Math.min((int)pos, keys.length-2);
+        float frac = pos - kk;
+        return keys[kk] + (keys[kk+1] - keys[kk]) * frac;
+    }
+}
@@ -8,6 +8,7 @@ package tripleplay.particle.effect;
 import playn.core.Color;
 
 import tripleplay.particle.Effector;
+import tripleplay.particle.ParticleBuffer;
 import tripleplay.util.Interpolator;
 import static tripleplay.particle.ParticleBuffer.*;
 
@@ -39,6 +40,73 @@ public class Alpha
                 float red = Color.decodeLower(data[start + ALPHA_RED]);
                 data[start + ALPHA_RED] = Color.encode(alpha, red);
             }
+
+            @Override public void applyAll (ParticleBuffer buffer, int from, int to,
+                                            float now, float dt, float[] scratch) {
+                if (buffer.fields == null) {
+                    super.applyAll(buffer, from, to, now, dt, scratch);
+                    return;
+                }
+                float[] births = buffer.fields[BIRTH], lifespans = buffer.fields[LIFESPAN];
+                float[] alphaReds = buffer.fields[ALPHA_RED];
+                for (int ii = from; ii < to; ii++) {
+                    float alpha = interp.apply(
+                        startAlpha, rangeAlpha, now - births[ii], lifespans[ii]);
+                    alphaReds[ii] = Color.encode(alpha, Color.decodeLower(alphaReds[ii]));
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns an effector like {@link #byAge(Interpolator,float,float)}, but which samples the
+     * interpolator into an {@link AgeTable} when it is created. This is cheaper to apply, but
+     * quantizes each particle's age to the table's resolution.
+     */
+    public static Effector byAgeTable (Interpolator interp, float startAlpha, float endAlpha) {
+        return byAgeTable(AgeTable.of(interp, startAlpha, endAlpha));
+    }
+
+    /**
+     * Returns an effector that sets the particle's alpha to the value of {@code table} for its
+     * age. Alpha values are clamped to {@code [0, 1]}.
+     */
+    public static Effector byAgeTable (AgeTable table) {
+        // precompute the encoded alpha for each sample, to which we need only add the red
+        final float[] alphas = new float[table.size()];
+        for (int ii = 0; ii < alphas.length; ii++) {
+            alphas[ii] = encodeUpper(table.values[ii]);
+        }
+        final int last = alphas.length-1;
+        return new Effector() {
+            @Override public void apply (int index, float[] data, int start, float now, float dt) {
+                int idx = AgeTable.index(now - data[start + BIRTH], data[start + LIFESPAN], last);
+                data[start + ALPHA_RED] = alphas[idx] + data[start + ALPHA_RED] % 256;
+            }
+
+            @Override public void applyAll (ParticleBuffer buffer, int from, int to,
+                                            float now, float dt, float[] scratch) {
+                if (buffer.fields == null) {
+                    float[] data = buffer.data;
+                    for (int ii = from*NUM_FIELDS, ll = to*NUM_FIELDS; ii < ll; ii += NUM_FIELDS) {
+                        int idx = AgeTable.index(now - data[ii + BIRTH], data[ii + LIFESPAN], last);
+                        data[ii + ALPHA_RED] = alphas[idx] + data[ii + ALPHA_RED] % 256;
+                    }
+                } else {
+                    float[] births = buffer.fields[BIRTH], lifespans = buffer.fields[LIFESPAN];
+                    float[] alphaReds = buffer.fields[ALPHA_RED];
+                    for (int ii = from; ii < to; ii++) {
+                        int idx = AgeTable.index(now - births[ii], lifespans[ii], last);
+                        alphaReds[ii] = alphas[idx] + alphaReds[ii] % 256;
+                    }
+                }
+            }
         };
     }
+
+    /** Returns the upper half of a value encoded by {@link Color#encode}, after clamping
+     * {@code value} to {@code [0, 1]}. */
+    static float encodeUpper (float value) {
+        return Math.round(Math.max(0, Math.min(1, value)) * 255) * 256;
+    }
 }
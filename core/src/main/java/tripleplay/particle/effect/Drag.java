@@ -6,6 +6,7 @@
 package tripleplay.particle.effect;
 
 import tripleplay.particle.Effector;
+import tripleplay.particle.ParticleBuffer;
 import static tripleplay.particle.ParticleBuffer.*;
 
 /**
@@ -38,5 +39,21 @@ public class Drag extends Effector
         data[start + VEL_Y] *= _dragY;
     }
 
+    @Override public void applyAll (ParticleBuffer buffer, int from, int to, float now, float dt,
+                                    float[] scratch) {
+        float dragX = _dragX, dragY = _dragY;
+        if (buffer.fields == null) {
+            float[] data = buffer.data;
+            for (int ii = from*NUM_FIELDS, ll = to*NUM_FIELDS; ii < ll; ii += NUM_FIELDS) {
+                data[ii + VEL_X] *= dragX;
+                data[ii + VEL_Y] *= dragY;
+            }
+        } else {
+            float[] vx = buffer.fields[VEL_X], vy = buffer.fields[VEL_Y];
+            for (int ii = from; ii < to; ii++) vx[ii] *= dragX;
+            for (int ii = from; ii < to; ii++) vy[ii] *= dragY;
+        }
+    }
+
     protected final float _dragX, _dragY;
 }
@@ -37,5 +37,19 @@ public class Gravity extends Effector
         data[start + ParticleBuffer.VEL_Y] += _accel * dt;
     }
 
+    @Override public void applyAll (ParticleBuffer buffer, int from, int to, float now, float dt,
+                                    float[] scratch) {
+        float dv = _accel * dt;
+        if (buffer.fields == null) {
+            float[] data = buffer.data;
+            int stride = ParticleBuffer.NUM_FIELDS;
+            for (int ii = from*stride + ParticleBuffer.VEL_Y, ll = to*stride; ii < ll;
+                 ii += stride) data[ii] += dv;
+        } else {
+            float[] vy = buffer.fields[ParticleBuffer.VEL_Y];
+            for (int ii = from; ii < to; ii++) vy[ii] += dv;
+        }
+    }
+
     protected final float _accel;
 }
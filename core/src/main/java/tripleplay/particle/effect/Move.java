@@ -6,6 +6,7 @@
 package tripleplay.particle.effect;
 
 import tripleplay.particle.Effector;
+import tripleplay.particle.ParticleBuffer;
 import static tripleplay.particle.ParticleBuffer.*;
 
 /**
@@ -17,4 +18,20 @@ public class Move extends Effector
         data[start + TX] += data[start + VEL_X] * dt;
         data[start + TY] += data[start + VEL_Y] * dt;
     }
+
+    @Override public void applyAll (ParticleBuffer buffer, int from, int to, float now, float dt,
+                                    float[] scratch) {
+        if (buffer.fields == null) {
+            float[] data = buffer.data;
+            for (int ii = from*NUM_FIELDS, ll = to*NUM_FIELDS; ii < ll; ii += NUM_FIELDS) {
+                data[ii + TX] += data[ii + VEL_X] * dt;
+                data[ii + TY] += data[ii + VEL_Y] * dt;
+            }
+        } else {
+            float[] tx = buffer.fields[TX], ty = buffer.fields[TY];
+            float[] vx = buffer.fields[VEL_X], vy = buffer.fields[VEL_Y];
+            for (int ii = from; ii < to; ii++) tx[ii] += vx[ii] * dt;
+            for (int ii = from; ii < to; ii++) ty[ii] += vy[ii] * dt;
+        }
+    }
 }
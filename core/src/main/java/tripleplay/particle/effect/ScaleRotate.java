@@ -0,0 +1,96 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle.effect;
+
+import pythagoras.f.FloatMath;
+
+import tripleplay.particle.Effector;
+import tripleplay.particle.ParticleBuffer;
+import tripleplay.util.Interpolator;
+import static tripleplay.particle.ParticleBuffer.*;
+
+/**
+ * Changes the scale and rotation of a particle over its life. These effectors replace the
+ * scale and rotation in a particle's transform (leaving its translation alone), so any scale or
+ * rotation assigned by its initializers is overridden.
+ */
+public class ScaleRotate
+{
+    /**
+     * Returns an effector that scales the particle from {@code startScale} to {@code endScale}
+     * over its life, as adjusted by the supplied interpolator. The particle is not rotated.
+     */
+    public static Effector scaleByAge (Interpolator interp, float startScale, float endScale) {
+        return byAge(AgeTable.of(interp, startScale, endScale),
+                     AgeTable.of(Interpolator.NOOP, 0, 0));
+    }
+
+    /**
+     * Returns an effector that rotates the particle from {@code startRot} to {@code endRot}
+     * (in radians) over its life, as adjusted by the supplied interpolator. The particle is not
+     * scaled.
+     */
+    public static Effector rotateByAge (Interpolator interp, float startRot, float endRot) {
+        return byAge(AgeTable.of(Interpolator.NOOP, 1, 1),
+                     AgeTable.of(interp, startRot, endRot));
+    }
+
+    /**
+     * Returns an effector that sets the particle's scale and rotation (in radians) to the values
+     * of the supplied tables for its age. The tables must be the same size.
+     */
+    public static Effector byAge (AgeTable scale, AgeTable rotation) {
+        int size = scale.size();
+        if (rotation.size() != size) {
+            throw new IllegalArgumentException("Tables must be the same size.");
+        }
+        // precompute the scaled cosine and sine of each sample, which make up the transform
+        final float[] coses = new float[size], sines = new float[size];
+        for (int ii = 0; ii < size; ii++) {
+            float s = scale.values[ii], rot = rotation.values[ii];
+            coses[ii] = FloatMath.cos(rot) * s;
+            sines[ii] = FloatMath.sin(rot) * s;
+        }
+        final int last = size-1;
+        return new Effector() {
+            @Override public void apply (int index, float[] data, int start, float now, float dt) {
+                int idx = AgeTable.index(now - data[start + BIRTH], data[start + LIFESPAN], last);
+                float cos = coses[idx], sin = sines[idx];
+                data[start + M00] = cos;
+                data[start + M01] = sin;
+                data[start + M10] = -sin;
+                data[start + M11] = cos;
+            }
+
+            @Override public void applyAll (ParticleBuffer buffer, int from, int to,
+                                            float now, float dt, float[] scratch) {
+                if (buffer.fields == null) {
+                    float[] data = buffer.data;
+                    for (int ii = from*NUM_FIELDS, ll = to*NUM_FIELDS; ii < ll; ii += NUM_FIELDS) {
+                        int idx = AgeTable.index(now - data[ii + BIRTH], data[ii + LIFESPAN], last);
+                        float cos = coses[idx], sin = sines[idx];
+                        data[ii + M00] = cos;
+                        data[ii + M01] = sin;
+                        data[ii + M10] = -sin;
+                        data[ii + M11] = cos;
+                    }
+                } else {
+                    float[] births = buffer.fields[BIRTH], lifespans = buffer.fields[LIFESPAN];
+                    float[] m00 = buffer.fields[M00], m01 = buffer.fields[M01];
+                    float[] m10 = buffer.fields[M10], m11 = buffer.fields[M11];
+                    for (int ii = from; ii < to; ii++) {
+                        int idx = AgeTable.index(now - births[ii], lifespans[ii], last);
+                        float cos = coses[idx], sin = sines[idx];
+                        m00[ii] = cos;
+                        m01[ii] = sin;
+                        m10[ii] = -sin;
+                        m11[ii] = cos;
+                    }
+                }
+            }
+        };
+    }
+}
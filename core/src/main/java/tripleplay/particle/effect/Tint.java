@@ -0,0 +1,101 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle.effect;
+
+import tripleplay.particle.Effector;
+import tripleplay.particle.ParticleBuffer;
+import tripleplay.util.Interpolator;
+import static tripleplay.particle.ParticleBuffer.*;
+
+/**
+ * Changes the color (tint) of a particle over its life.
+ */
+public class Tint
+{
+    /**
+     * Returns an effector that changes the particle's color (including its alpha) from {@code
+     * startArgb} to {@code endArgb} over its life, as adjusted by the supplied interpolator.
+     */
+    public static Effector byAge (Interpolator interp, int startArgb, int endArgb) {
+        AgeTable[] channels = new AgeTable[4];
+        for (int cc = 0; cc < 4; cc++) {
+            channels[cc] = AgeTable.of(interp, channel(startArgb, cc), channel(endArgb, cc));
+        }
+        return byAge(channels[0], channels[1], channels[2], channels[3]);
+    }
+
+    /**
+     * Returns an effector that changes the particle's color (including its alpha) through each
+     * of the supplied colors in turn, which are evenly spaced over its life (the first at its
+     * birth and the last at its death), blending linearly between them.
+     */
+    public static Effector gradient (int... argbs) {
+        float[][] keys = new float[4][argbs.length];
+        for (int ii = 0; ii < argbs.length; ii++) {
+            for (int cc = 0; cc < 4; cc++) keys[cc][ii] = channel(argbs[ii], cc);
+        }
+        return byAge(AgeTable.keys(keys[0]), AgeTable.keys(keys[1]), AgeTable.keys(keys[2]),
+                     AgeTable.keys(keys[3]));
+    }
+
+    /**
+     * Returns an effector that sets the particle's alpha, red, green and blue to the values of
+     * the supplied tables for its age. The tables must all be the same size, and their values are
+     * clamped to {@code [0, 1]}.
+     */
+    public static Effector byAge (AgeTable alpha, AgeTable red, AgeTable green, AgeTable blue) {
+        int size = alpha.size();
+        if (red.size() != size || green.size() != size || blue.size() != size) {
+            throw new IllegalArgumentException("Tables must all be the same size.");
+        }
+        // precompute the encoded alpha/red and green/blue values for each sample
+        final float[] ars = new float[size], gbs = new float[size];
+        for (int ii = 0; ii < size; ii++) {
+            ars[ii] = Alpha.encodeUpper(alpha.values[ii]) + encodeLower(red.values[ii]);
+            gbs[ii] = Alpha.encodeUpper(green.values[ii]) + encodeLower(blue.values[ii]);
+        }
+        final int last = size-1;
+        return new Effector() {
+            @Override public void apply (int index, float[] data, int start, float now, float dt) {
+                int idx = AgeTable.index(now - data[start + BIRTH], data[start + LIFESPAN], last);
+                data[start + ALPHA_RED] = ars[idx];
+                data[start + GREEN_BLUE] = gbs[idx];
+            }
+
+            @Override public void applyAll (ParticleBuffer buffer, int from, int to,
+                                            float now, float dt, float[] scratch) {
+                if (buffer.fields == null) {
+                    float[] data = buffer.data;
+                    for (int ii = from*NUM_FIELDS, ll = to*NUM_FIELDS; ii < ll; ii += NUM_FIELDS) {
+                        int idx = AgeTable.index(now - data[ii + BIRTH], data[ii + LIFESPAN], last);
+                        data[ii + ALPHA_RED] = ars[idx];
+                        data[ii + GREEN_BLUE] = gbs[idx];
+                    }
+                } else {
+                    float[] births = buffer.fields[BIRTH], lifespans = buffer.fields[LIFESPAN];
+                    float[] alphaReds = buffer.fields[ALPHA_RED];
+                    float[] greenBlues = buffer.fields[GREEN_BLUE];
+                    for (int ii = from; ii < to; ii++) {
+                        int idx = AgeTable.index(now - births[ii], lifespans[ii], last);
+                        alphaReds[ii] = ars[idx];
+                        greenBlues[ii] = gbs[idx];
+                    }
+                }
+            }
+        };
+    }
+
+    /** Returns the {@code cc}th channel (alpha, red, green, blue) of {@code argb} in [0, 1]. */
+    protected static float channel (int argb, int cc) {
+        return ((argb >> (24 - 8*cc)) & 0xFF) / 255f;
+    }
+
+    /** Returns the lower half of a value encoded by {@link playn.core.Color#encode}, after
+     * clamping {@code value} to {@code [0, 1]}. */
+    protected static float encodeLower (float value) {
+        return Math.round(Math.max(0, Math.min(1, value)) * 255);
+    }
+}
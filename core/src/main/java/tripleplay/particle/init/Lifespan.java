@@ -30,9 +30,9 @@ public class Lifespan
      * Returns an initializer that provides a random lifespan between {@code min} and {@code max}.
      */
     public static Initializer random (final Randoms rando, final float min, final float max) {
-        return new Initializer() {
-            @Override public void init (int index, float[] data, int start) {
-                data[start+ParticleBuffer.LIFESPAN] = rando.getInRange(min, max);
+        return new RandomInitializer(rando, 1) {
+            @Override protected void init (float[] data, int start, float[] rands, int rpos) {
+                data[start+ParticleBuffer.LIFESPAN] = min + rands[rpos] * (max - min);
             }
         };
     }
@@ -0,0 +1,54 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle.init;
+
+import tripleplay.util.Randoms;
+
+import tripleplay.particle.Initializer;
+
+/**
+ * An initializer which uses a fixed number of random values in [0, 1) for each particle. Rather
+ * than obtaining them one at a time, it obtains all of the values for a batch of particles in
+ * one call, when it is told the batch size via {@link #willInit}.
+ */
+abstract class RandomInitializer extends Initializer
+{
+    RandomInitializer (Randoms rando, int perParticle) {
+        _rando = rando;
+        _per = perParticle;
+        _rands = new float[perParticle * 32];
+    }
+
+    @Override public void willInit (int count) {
+        draw(count);
+    }
+
+    @Override public void init (int index, float[] data, int start) {
+        // if we weren't told about this particle in willInit, obtain more values
+        if (_rpos + _per > _rend) draw(_rands.length / _per);
+        init(data, start, _rands, _rpos);
+        _rpos += _per;
+    }
+
+    /**
+     * Initializes the particle whose fields start at {@code data[start]}, using the random
+     * values in {@code rands[rpos, rpos+perParticle)}.
+     */
+    protected abstract void init (float[] data, int start, float[] rands, int rpos);
+
+    protected void draw (int count) {
+        int needed = count * _per;
+        if (_rands.length < needed) _rands = new float[needed];
+        _rando.getInRange(_rands, 0, needed, 0, 1);
+        _rpos = 0;
+        _rend = needed;
+    }
+
+    protected final Randoms _rando;
+    protected final int _per;
+    protected float[] _rands;
+    protected int _rpos, _rend;
+}
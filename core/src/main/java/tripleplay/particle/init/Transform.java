@@ -77,9 +77,9 @@ public class Transform
     public static Initializer randomScale (final Randoms rando, final float minScale,
                                            final float maxScale)
     {
-        return new Initializer() {
-            @Override public void init (int index, float[] data, int start) {
-                float scale = rando.getInRange(minScale, maxScale);
+        return new RandomInitializer(rando, 1) {
+            @Override protected void init (float[] data, int start, float[] rands, int rpos) {
+                float scale = minScale + rands[rpos] * (maxScale - minScale);
                 data[start + ParticleBuffer.M00] *= scale;
                 data[start + ParticleBuffer.M01] *= scale;
                 data[start + ParticleBuffer.M10] *= scale;
@@ -119,10 +119,10 @@ public class Transform
      */
     public static Initializer randomPos (final Randoms rando, final float x, final float y,
                                          final float width, final float height) {
-        return new Initializer() {
-            @Override public void init (int index, float[] data, int start) {
-                data[start + ParticleBuffer.TX] = x + rando.getFloat(width);
-                data[start + ParticleBuffer.TY] = y + rando.getFloat(height);
+        return new RandomInitializer(rando, 2) {
+            @Override protected void init (float[] data, int start, float[] rands, int rpos) {
+                data[start + ParticleBuffer.TX] = x + rands[rpos] * width;
+                data[start + ParticleBuffer.TY] = y + rands[rpos+1] * height;
             }
         };
     }
@@ -132,10 +132,10 @@ public class Transform
      * location by up to {@code noise} units in both x and y.
      */
     public static Initializer randomOffset (final Randoms rando, final float noise) {
-        return new Initializer() {
-            @Override public void init (int index, float[] data, int start) {
-                data[start + ParticleBuffer.TX] += rando.getInRange(-noise, noise);
-                data[start + ParticleBuffer.TY] += rando.getInRange(-noise, noise);
+        return new RandomInitializer(rando, 2) {
+            @Override protected void init (float[] data, int start, float[] rands, int rpos) {
+                data[start + ParticleBuffer.TX] += (rands[rpos] * 2 - 1) * noise;
+                data[start + ParticleBuffer.TY] += (rands[rpos+1] * 2 - 1) * noise;
             }
         };
     }
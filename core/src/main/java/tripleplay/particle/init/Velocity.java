@@ -46,9 +46,10 @@ public class Velocity
     public static Initializer randomSquare (final Randoms rando,
                                             final float minX, final float maxX,
                                             final float minY, final float maxY) {
-        return new VelocityInitializer() {
-            @Override protected void initVelocity (Vector vel) {
-                vel.set(rando.getInRange(minX, maxX), rando.getInRange(minY, maxY));
+        return new RandomInitializer(rando, 2) {
+            @Override protected void init (float[] data, int start, float[] rands, int rpos) {
+                data[start + ParticleBuffer.VEL_X] = minX + rands[rpos] * (maxX - minX);
+                data[start + ParticleBuffer.VEL_Y] = minY + rands[rpos+1] * (maxY - minY);
             }
         };
     }
@@ -88,11 +89,12 @@ public class Velocity
      * minimum and maximum magnitude.
      */
     public static Initializer randomCircle (final Randoms rando, final float min, final float max) {
-        return new VelocityInitializer() {
-            @Override protected void initVelocity (Vector vel) {
-                float angle = rando.getFloat(FloatMath.TWO_PI);
-                float magnitude = min + rando.getFloat(max-min);
-                vel.set(FloatMath.sin(angle)*magnitude, FloatMath.cos(angle)*magnitude);
+        return new RandomInitializer(rando, 2) {
+            @Override protected void init (float[] data, int start, float[] rands, int rpos) {
+                float angle = rands[rpos] * FloatMath.TWO_PI;
+                float magnitude = min + rands[rpos+1] * (max-min);
+                data[start + ParticleBuffer.VEL_X] = FloatMath.sin(angle)*magnitude;
+                data[start + ParticleBuffer.VEL_Y] = FloatMath.cos(angle)*magnitude;
             }
         };
     }
@@ -13,6 +13,7 @@ import react.UnitSignal;
 import react.Value;
 import react.ValueView;
 import tripleplay.ui.Field;
+import tripleplay.util.TaskPool;
 
 /**
  * The entry point for per-platform services made available by TriplePlay. This is akin to the
@@ -64,6 +65,12 @@ public abstract class TPPlatform
         throw new UnsupportedOperationException();
     }
 
+    /** Returns a task pool that runs work on as many threads as this platform can usefully
+     * provide. The default implementation runs all tasks on the calling thread. */
+    public TaskPool taskPool () {
+        return TaskPool.SERIAL;
+    }
+
     /** Sets the instance of KeyboardFocusController to use for keyboard focus management, or
      * null for none. */
     public void setKeyboardFocusController (KeyboardFocusController ctrl) {
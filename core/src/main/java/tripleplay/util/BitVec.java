@@ -34,7 +34,7 @@ public final class BitVec
     public void set (int value) {
         int word = value / 32;
         if (_words.length <= word) {
-            int[] words = new int[_words.length*2];
+            int[] words = new int[Math.max(_words.length*2, word+1)];
             java.lang.System.arraycopy(_words, 0, words, 0, _words.length);
             _words = words;
         }
@@ -49,6 +49,62 @@ public final class BitVec
         Arrays.fill(_words, owlength, _words.length, 0);
     }
 
+    /** Returns the index of the first set bit at or after {@code fromIndex}, or -1 if no bits at
+     * or after {@code fromIndex} are set. */
+    public int nextSetBit (int fromIndex) {
+        int word = fromIndex / 32;
+        if (word >= _words.length) return -1;
+        int bits = _words[word] & (-1 << (fromIndex % 32));
+        while (bits == 0) {
+            if (++word == _words.length) return -1;
+            bits = _words[word];
+        }
+        return word * 32 + Integer.numberOfTrailingZeros(bits);
+    }
+
+    /** Returns whether every bit set in {@code other} is also set in this vector. */
+    public boolean containsAll (BitVec other) {
+        int[] words = _words, owords = other._words;
+        for (int ii = 0, ll = owords.length; ii < ll; ii++) {
+            int oword = owords[ii];
+            if (oword == 0) continue;
+            if (ii >= words.length || (words[ii] & oword) != oword) return false;
+        }
+        return true;
+    }
+
+    /** Returns whether any bit set in {@code other} is also set in this vector. */
+    public boolean intersects (BitVec other) {
+        int[] words = _words, owords = other._words;
+        for (int ii = 0, ll = Math.min(words.length, owords.length); ii < ll; ii++) {
+            if ((words[ii] & owords[ii]) != 0) return true;
+        }
+        return false;
+    }
+
+    /** Returns whether no bits are set in this vector. */
+    public boolean isEmpty () {
+        for (int word : _words) if (word != 0) return false;
+        return true;
+    }
+
+    /** Returns the {@code index}th 32-bit word of this vector, which contains bits {@code
+     * index*32} through {@code index*32+31}. */
+    public int word (int index) {
+        return (index < _words.length) ? _words[index] : 0;
+    }
+
+    /** Replaces the {@code index}th 32-bit word of this vector. See {@link #word}. */
+    public void setWord (int index, int word) {
+        if (_words.length <= index) {
+            if (word == 0) return;
+            int[] words = new int[Math.max(_words.length*2, index+1)];
+            java.lang.System.arraycopy(_words, 0, words, 0, _words.length);
+            _words = words;
+        }
+        _words[index] = word;
+    }
+
     /** Clears the {@code value}th bit. */
     public void clear (int value) {
         int word = value / 32;
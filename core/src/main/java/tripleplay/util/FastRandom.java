@@ -0,0 +1,99 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import java.util.Random;
+
+/**
+ * A fast, seedable pseudorandom number generator, using Marsaglia's xorshift128 algorithm. Its
+ * state is four ints, so it needs no long arithmetic (which is slow when compiled to JavaScript)
+ * except when it is seeded. It can be used anywhere a {@link Random} is needed, for example via
+ * {@link Randoms#with}.
+ *
+ * <p>Unlike {@link Random}, this generator is <em>not</em> thread-safe: it does no
+ * synchronization and no atomic updates, which is what makes it cheap to call many thousands of
+ * times per frame. Use one generator per thread. Its output is also not suitable for anything
+ * security sensitive.</p>
+ */
+public class FastRandom extends Random
+{
+    /**
+     * Creates a generator with a seed that is very likely to differ from that of any other
+     * generator.
+     */
+    public FastRandom () {
+        super(); // calls setSeed
+    }
+
+    /**
+     * Creates a generator with the specified seed. Generators created with the same seed produce
+     * the same sequence of values.
+     */
+    public FastRandom (long seed) {
+        super(seed); // calls setSeed
+    }
+
+    @Override public void setSeed (long seed) {
+        super.setSeed(seed); // resets our superclass's saved gaussian
+        // spread the seed over our state with SplitMix64, so that similar seeds yield
+        // dissimilar sequences
+        long s0 = mix(seed += 0x9E3779B97F4A7C15L), s1 = mix(seed + 0x9E3779B97F4A7C15L);
+        _x = (int)s0;
+        _y = (int)(s0 >>> 32);
+        _z = (int)s1;
+        _w = (int)(s1 >>> 32);
+        if ((_x | _y | _z | _w) == 0) _w = 1; // the all zero state is a fixed point
+    }
+
+    @Override public int nextInt () {
+        int t = _x ^ (_x << 11);
+        _x = _y; _y = _z; _z = _w;
+        return _w = (_w ^ (_w >>> 19)) ^ (t ^ (t >>> 8));
+    }
+
+    @Override public float nextFloat () {
+        return (nextInt() >>> 8) * FLOAT_UNIT;
+    }
+
+    @Override public boolean nextBoolean () {
+        return nextInt() < 0;
+    }
+
+    /**
+     * Fills {@code dest[offset, offset+count)} with pseudorandom, uniformly distributed values
+     * between {@code low} (inclusive) and {@code high} (exclusive). This produces the same
+     * values as {@code count} calls to {@link #nextFloat} (scaled into range), but keeps the
+     * generator's state in locals while it does so.
+     */
+    public void fill (float[] dest, int offset, int count, float low, float high) {
+        float scale = (high - low) * FLOAT_UNIT;
+        int x = _x, y = _y, z = _z, w = _w;
+        for (int ii = offset, ll = offset + count; ii < ll; ii++) {
+            int t = x ^ (x << 11);
+            x = y; y = z; z = w;
+            w = (w ^ (w >>> 19)) ^ (t ^ (t >>> 8));
+            dest[ii] = low + (w >>> 8) * scale;
+        }
+        _x = x; _y = y; _z = z; _w = w;
+    }
+
+    @Override protected int next (int bits) {
+        return nextInt() >>> (32 - bits);
+    }
+
+    protected static long mix (long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    protected int _x, _y, _z, _w;
+
+    /** Scales a 24-bit integer into a float in [0, 1). */
+    protected static final float FLOAT_UNIT = 1f / (1 << 24);
+
+    private static final long serialVersionUID = 1L;
+}
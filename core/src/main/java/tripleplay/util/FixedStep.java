@@ -0,0 +1,107 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import react.Signal;
+import react.Slot;
+
+import playn.core.Clock;
+
+/**
+ * Converts a variable rate frame signal into a fixed rate update signal and a paint signal with an
+ * interpolation alpha. Every frame, elapsed time is added to an accumulator and {@link #update} is
+ * emitted once for every whole step in the accumulator, each time with a {@link Clock#dt} of
+ * exactly one step. Then {@link #paint} is emitted with {@link Clock#alpha} set to the fraction
+ * of a step remaining in the accumulator, so that painting can blend between the previous and
+ * current simulation state. Example usage:
+ *
+ * <pre>{@code
+ * FixedStep step = new FixedStep(16, 5);
+ * game.paint.connect(step.onFrame);
+ * world.connect(step.update, step.paint);
+ * // animations can also be driven at the fixed rate
+ * step.update.connect(animator.onPaint);
+ * }</pre>
+ *
+ * <p>If a frame takes so long that more than {@link #maxSteps} steps have accumulated, only
+ * {@code maxSteps} updates are performed and the remaining time is discarded. This keeps a slow
+ * update from causing ever longer frames (the "spiral of death") at the expense of the
+ * simulation running slower than real time.</p>
+ */
+public class FixedStep
+{
+    /** Emitted once for every step of elapsed time, with a clock that advances by exactly one
+      * step each time. */
+    public final Signal<Clock> update = Signal.create();
+
+    /** Emitted once per frame, after any updates, with a clock whose {@code alpha} is the
+      * fraction of a step that has elapsed since the last update. */
+    public final Signal<Clock> paint = Signal.create();
+
+    /** Receives frame notifications. This should be connected to a signal which is emitted once
+      * per frame with a clock whose {@code tick} is the current time (like a game's {@code
+      * paint} signal). */
+    public final Slot<Clock> onFrame = new Slot<Clock>() {
+        public void onEmit (Clock clock) { onFrame(clock.tick); }
+    };
+
+    /** The duration of a single update step, in milliseconds. */
+    public final int step;
+
+    /** The maximum number of updates performed in a single frame. */
+    public final int maxSteps;
+
+    /** Creates a fixed step driver.
+      * @param step the duration of a single update step, in milliseconds.
+      * @param maxSteps the maximum number of updates to perform in a single frame. */
+    public FixedStep (int step, int maxSteps) {
+        if (step <= 0) throw new IllegalArgumentException("Step must be positive.");
+        if (maxSteps <= 0) throw new IllegalArgumentException("Max steps must be positive.");
+        this.step = step;
+        this.maxSteps = maxSteps;
+        _updateClock.dt = step;
+    }
+
+    /** Returns the total number of milliseconds of elapsed time that have been discarded because
+      * frames needed more than {@link #maxSteps} updates. */
+    public int droppedMillis () {
+        return _dropped;
+    }
+
+    /** Processes a frame which occurred at {@code tick} milliseconds. This is normally called via
+      * {@link #onFrame}. */
+    public void onFrame (int tick) {
+        if (!_started) {
+            _started = true;
+            _updateClock.tick = tick;
+            _paintClock.dt = 0;
+        } else {
+            _accum += tick - _lastTick;
+            _paintClock.dt = tick - _lastTick;
+        }
+        _lastTick = tick;
+
+        for (int ii = 0; ii < maxSteps && _accum >= step; ii++) {
+            _accum -= step;
+            _updateClock.tick += step;
+            update.emit(_updateClock);
+        }
+        // if we couldn't catch up, drop the backlog rather than trying to process it next frame
+        if (_accum >= step) {
+            int drop = _accum - _accum % step;
+            _accum -= drop;
+            _dropped += drop;
+        }
+
+        _paintClock.tick = tick;
+        _paintClock.alpha = _accum / (float)step;
+        paint.emit(_paintClock);
+    }
+
+    protected final Clock _updateClock = new Clock(), _paintClock = new Clock();
+    protected boolean _started;
+    protected int _lastTick, _accum, _dropped;
+}
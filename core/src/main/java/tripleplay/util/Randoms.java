@@ -25,6 +25,22 @@ public class Randoms
         return new Randoms(rand);
     }
 
+    /**
+     * Creates a Randoms which uses a new {@link FastRandom}. The returned object is
+     * <em>not</em> thread-safe, but is much cheaper to call than one using {@link Random}.
+     */
+    public static Randoms fast () {
+        return new Randoms(new FastRandom());
+    }
+
+    /**
+     * Creates a Randoms which uses a new {@link FastRandom} with the specified seed. Two such
+     * objects created with the same seed produce the same values, given the same calls.
+     */
+    public static Randoms fast (long seed) {
+        return new Randoms(new FastRandom(seed));
+    }
+
     /**
      * Returns a pseudorandom, uniformly distributed {@code int} value between {@code 0}
      * (inclusive) and {@code high} (exclusive).
@@ -65,6 +81,22 @@ public class Randoms
         return low + (_r.nextFloat() * (high - low));
     }
 
+    /**
+     * Fills {@code dest[offset, offset+count)} with pseudorandom, uniformly distributed {@code
+     * float} values between {@code low} (inclusive) and {@code high} (exclusive). This is faster
+     * than calling {@link #getInRange(float,float)} {@code count} times, especially when this
+     * object uses a {@link FastRandom}.
+     */
+    public void getInRange (float[] dest, int offset, int count, float low, float high) {
+        if (_r instanceof FastRandom) ((FastRandom)_r).fill(dest, offset, count, low, high);
+        else {
+            float range = high - low;
+            for (int ii = offset, ll = offset + count; ii < ll; ii++) {
+                dest[ii] = low + (_r.nextFloat() * range);
+            }
+        }
+    }
+
     /**
      * Returns true approximately one in {@code n} times.
      *
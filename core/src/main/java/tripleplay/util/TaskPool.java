@@ -0,0 +1,37 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+/**
+ * Runs batches of independent tasks, potentially in parallel. Core TriplePlay code cannot create
+ * threads (it must run on platforms like HTML which have none), so it performs parallel work via
+ * an instance of this class supplied by the game. {@link #SERIAL} simply runs every task on the
+ * calling thread; platforms with threads provide a multithreaded pool via {@code
+ * TPPlatform.taskPool}.
+ */
+public abstract class TaskPool
+{
+    /** A task pool that runs all tasks, in order, on the calling thread. */
+    public static final TaskPool SERIAL = new TaskPool() {
+        @Override public int parallelism () { return 1; }
+        @Override public void invokeAll (Runnable[] tasks, int count) {
+            for (int ii = 0; ii < count; ii++) tasks[ii].run();
+        }
+        @Override public String toString () { return "SERIAL"; }
+    };
+
+    /** Returns the number of tasks this pool can usefully run at the same time. Callers use this
+     * to decide how finely to split up their work. */
+    public abstract int parallelism ();
+
+    /**
+     * Runs {@code tasks[0]} through {@code tasks[count-1]} and returns once they have all
+     * completed. The tasks may be run in any order and on any thread (including the calling
+     * thread). All writes made by the tasks are visible to the caller once this method returns.
+     * If any task throws an exception, it is rethrown by this method once all tasks have finished.
+     */
+    public abstract void invokeAll (Runnable[] tasks, int count);
+}
@@ -0,0 +1,76 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.entity;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import pythagoras.f.Vector3;
+
+public class ComponentTest
+{
+    @Test public void testPrimitives () {
+        World world = new World();
+        Component.LScalar lval = new Component.LScalar(world);
+        Component.DScalar dval = new Component.DScalar(world);
+        Component.ARGB color = new Component.ARGB(world);
+        // use an id past the first few blocks to exercise block allocation
+        Entity e = world.create(true);
+        for (int ii = 0; ii < 1000; ii++) e = world.create(true);
+        e.add(lval, dval, color);
+
+        lval.set(e.id, 1L << 40);
+        lval.add(e.id, 1);
+        assertEquals((1L << 40) + 1, lval.get(e.id));
+        dval.set(e.id, 0.5);
+        dval.add(e.id, 0.25);
+        assertEquals(0.75, dval.get(e.id), 0);
+
+        color.set(e.id, 0x80, 0x10, 0x20, 0x30);
+        assertEquals(0x80102030, color.get(e.id));
+        assertEquals(0x20, color.green(e.id));
+        color.setAlpha(e.id, 0xFF);
+        assertEquals(0xFF102030, color.get(e.id));
+    }
+
+    @Test public void testVectors () {
+        World world = new World();
+        Component.XYZ pos = new Component.XYZ(world), vel = new Component.XYZ(world);
+        Component.FVec xf = new Component.FVec(world, 5), oxf = new Component.FVec(world, 5);
+        Entity e1 = world.create(true).add(pos, vel, xf, oxf);
+        Entity e2 = world.create(true).add(pos, vel, xf, oxf);
+
+        pos.set(e1.id, 1, 2, 3);
+        vel.set(e1.id, 10, 20, 30);
+        pos.add(e1.id, vel);
+        assertEquals(new Vector3(11, 22, 33), pos.get(e1.id, new Vector3()));
+        vel.set(e1.id, pos);
+        assertEquals(11, vel.getX(e1.id), 0);
+        pos.set(e2.id, 4, 5, 6);
+        assertEquals(6, pos.getZ(e2.id), 0);
+        assertEquals(33, pos.getZ(e1.id), 0);
+
+        xf.set(e2.id, new float[] { 0, 1, 2, 3, 4, 5 }, 1);
+        assertEquals(5, xf.get(e2.id, 4), 0);
+        assertEquals(0, xf.get(e1.id, 4), 0);
+        oxf.set(e2.id, xf);
+        oxf.add(e2.id, xf);
+        oxf.add(e2.id, 0, 0.5f);
+        assertArrayEquals(new float[] { 2.5f, 4, 6, 8, 10 }, oxf.get(e2.id, new float[5], 0), 0);
+    }
+
+    @Test public void testLerp () {
+        World world = new World();
+        Component.XY pos = new Component.XY(world), prev = new Component.XY(world);
+        Entity e = world.create(true).add(pos, prev);
+        prev.set(e.id, 10, -10);
+        pos.set(e.id, 20, 10);
+        assertEquals(10, pos.lerpX(e.id, prev, 0), 0);
+        assertEquals(15, pos.lerpX(e.id, prev, 0.5f), 0);
+        assertEquals(5, pos.lerpY(e.id, prev, 0.75f), 0);
+        assertEquals(10, pos.lerpY(e.id, prev, 1), 0);
+    }
+}
@@ -5,14 +5,25 @@
 
 package tripleplay.entity;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import playn.core.Clock;
 
 import tripleplay.entity.Component;
 import tripleplay.entity.Entity;
 import tripleplay.entity.World;
+import tripleplay.util.TaskPool;
 
 public class EntityTest {
 
@@ -31,6 +42,408 @@ public class EntityTest {
         }
     }
 
+    class QueryWorld extends World {
+        public final Component.IScalar a = new Component.IScalar(this);
+        public final Component.IScalar b = new Component.IScalar(this);
+        public final Component.IScalar c = new Component.IScalar(this);
+        public final ABSystem sys = new ABSystem(this);
+        public final TallySystem tally = new TallySystem(this);
+        class ABSystem extends QuerySystem {
+            public int added, removed;
+            public ABSystem (World world) { super(world, 0, new Component[] { a, b }, c); }
+            @Override protected void wasAdded (Entity entity) { added++; }
+            @Override protected void wasRemoved (Entity entity, int index) { removed++; }
+        }
+        class TallySystem extends System {
+            public int checks;
+            public TallySystem (World world) { super(world, 0); }
+            @Override protected boolean isInterested (Entity entity) {
+                checks++;
+                return false;
+            }
+        }
+    }
+
+    @Test public void testQuery () {
+        QueryWorld world = new QueryWorld();
+        Entity e = world.create(true).add(world.a);
+        world.update(null);
+        assertEquals(0, world.sys.entityCount());
+        int checks = world.tally.checks;
+        e.add(world.b);
+        world.update(null);
+        assertEquals(1, world.sys.entityCount());
+        assertEquals(1, world.sys.added);
+        e.add(world.c);
+        world.update(null);
+        assertEquals(0, world.sys.entityCount());
+        assertEquals(1, world.sys.removed);
+        e.remove(world.c);
+        world.update(null);
+        assertEquals(1, world.sys.entityCount());
+        assertEquals(2, world.sys.added);
+        // systems without a query are still consulted on every change
+        assertEquals(checks+3, world.tally.checks);
+        e.didChange();
+        world.update(null);
+        assertEquals(1, world.sys.entityCount());
+        assertEquals(checks+4, world.tally.checks);
+        e.dispose();
+        world.update(null);
+        assertEquals(0, world.sys.entityCount());
+        assertEquals(2, world.sys.removed);
+    }
+
+    class OrderedSystem extends System {
+        public OrderedSystem (World world, int priority, List<String> log, String name) {
+            super(world, priority);
+            _log = log;
+            _name = name;
+        }
+        @Override protected boolean isInterested (Entity entity) { return false; }
+        @Override protected void update (Clock clock, Entities entities) { _log.add(_name); }
+        protected final List<String> _log;
+        protected final String _name;
+    }
+
+    @Test public void testParallelSchedule () {
+        final List<String> log = new ArrayList<String>();
+        World world = new World();
+        final Component.IScalar a = new Component.IScalar(world);
+        final Component.IScalar b = new Component.IScalar(world);
+        new OrderedSystem(world, 3, log, "writeA") {{ writes(a); }};
+        new OrderedSystem(world, 2, log, "readA") {{ reads(a); }};
+        new OrderedSystem(world, 2, log, "writeB") {{ reads(a); writes(b); }};
+        new OrderedSystem(world, 1, log, "exclusive");
+        new OrderedSystem(world, 0, log, "readB") {{ reads(b); }};
+
+        final List<Integer> batches = new ArrayList<Integer>();
+        world.setTaskPool(new TaskPool() {
+            @Override public int parallelism () { return 4; }
+            @Override public void invokeAll (Runnable[] tasks, int count) {
+                batches.add(count);
+                log.add("|");
+                TaskPool.SERIAL.invokeAll(tasks, count);
+            }
+        });
+        world.update(null);
+        assertEquals(Arrays.asList(2), batches);
+        assertEquals(Arrays.asList("writeA", "|", "readA", "writeB", "exclusive", "readB"), log);
+    }
+
+    @Test public void testForEachParallel () {
+        final TestWorld tworld = new TestWorld();
+        for (int ii = 0; ii < 1000; ii++) tworld.create(true).add(tworld.comp);
+        tworld.update(null);
+        final int[] visits = new int[1000], chunks = new int[5];
+        int count = new System(tworld, 0) {
+            @Override protected boolean isInterested (Entity entity) { return false; }
+            public int run () {
+                return forEachParallel(tworld.sys._active, 250, new RangeOp() {
+                    public void apply (Entities entities, int chunk, int from, int to) {
+                        chunks[chunk] += to - from;
+                        for (int ii = from; ii < to; ii++) visits[entities.get(ii)-1]++;
+                    }
+                });
+            }
+        }.run();
+        assertEquals(4, count);
+        assertArrayEquals(new int[] { 250, 250, 250, 250, 0 }, chunks);
+        for (int ii = 0; ii < visits.length; ii++) assertEquals(1, visits[ii]);
+    }
+
+    @Test public void testTrim () {
+        TestWorld world = new TestWorld();
+        List<Entity> ents = new ArrayList<Entity>();
+        for (int ii = 0; ii < 5000; ii++) ents.add(world.create(true).add(world.comp));
+        world.update(null);
+        Entity keep = ents.get(10);
+        world.comp.set(keep.id, 42);
+        long[] handles = new long[ents.size()];
+        for (int ii = 0; ii < handles.length; ii++) handles[ii] = ents.get(ii).handle();
+        for (Entity ent : ents) if (ent != keep) ent.dispose();
+        world.update(null);
+        assertEquals(1, world.sys.entityCount());
+
+        assertTrue(world.trim() > 0);
+        assertEquals(0, world.trim());
+        assertEquals(42, world.comp.get(keep.id));
+        // the entity, generation and active arrays shrink to fit the remaining entity
+        assertEquals(World.ENTITIES_SIZE, world._entities.length);
+        assertEquals(World.ENTITIES_SIZE, world._generations.length);
+        assertEquals(1, world.sys._active._elems.length);
+        assertEquals(IntSet.INDEX_SIZE, world.sys._active._index.length);
+
+        // make sure we can create entities again, reusing trimmed ids and blocks
+        for (int ii = 0; ii < 5000; ii++) world.create(true).add(world.comp);
+        world.update(null);
+        assertEquals(5001, world.sys.entityCount());
+        // handles to the entities whose ids were trimmed stay dead when those ids are reused
+        for (int ii = 0; ii < handles.length; ii++) {
+            assertEquals(ents.get(ii) == keep, world.isAlive(handles[ii]));
+        }
+        assertEquals(42, world.comp.get(keep.id));
+        int count = 0;
+        for (Entity ent : world) count++;
+        assertEquals(5001, count);
+    }
+
+    @Test public void testHandles () {
+        TestWorld world = new TestWorld();
+        Entity e1 = world.create(true).add(world.comp);
+        long h1 = e1.handle();
+        assertEquals(e1.id, World.handleId(h1));
+        assertTrue(world.isAlive(h1));
+        assertSame(e1, world.entityFor(h1));
+
+        e1.dispose();
+        assertFalse(world.isAlive(h1));
+        world.update(null);
+
+        // the id is recycled, but the old handle remains dead
+        Entity e2 = world.create(true);
+        assertEquals(e1.id, e2.id);
+        assertFalse(world.isAlive(h1));
+        assertNull(world.entityFor(h1));
+        assertTrue(world.isAlive(e2.handle()));
+        assertTrue(h1 != e2.handle());
+
+        // handles survive trimming
+        e2.dispose();
+        world.update(null);
+        world.trim();
+        Entity e3 = world.create(true);
+        assertEquals(e1.id, e3.id);
+        assertFalse(world.isAlive(h1));
+        assertTrue(world.isAlive(e3.handle()));
+    }
+
+    @Test public void testHandleReuse () {
+        TestWorld world = new TestWorld();
+        // an id which is recycled many thousands of times never revives an old handle
+        Entity e = world.create(true);
+        long h0 = e.handle();
+        for (int ii = 0; ii < 5000; ii++) {
+            e.dispose();
+            world.update(null);
+            e = world.create(true);
+            assertFalse(world.isAlive(h0));
+        }
+        assertEquals(World.handleId(h0), e.id);
+
+        // freed ids are recycled in the order in which they were freed
+        Entity a = world.create(true), b = world.create(true), c = world.create(true);
+        b.dispose();
+        world.update(null);
+        a.dispose();
+        world.update(null);
+        assertEquals(b.id, world.create(true).id);
+        c.dispose();
+        world.update(null);
+        assertEquals(a.id, world.create(true).id);
+        assertEquals(c.id, world.create(true).id);
+    }
+
+    class SnapWorld extends World {
+        public final Component.XY pos = new Component.XY(this);
+        public final Component.IScalar hp = new Component.IScalar(this);
+        public final Component.LScalar born = new Component.LScalar(this);
+        public final Component.DScalar mass = new Component.DScalar(this);
+        public final Component.Generic<String> name = new Component.Generic<String>(
+            this, new Component.Generic.Codec<String>() {
+                public void write (String value, ByteBuffer buf) {
+                    buf.putInt(value.length());
+                    for (int ii = 0; ii < value.length(); ii++) buf.putChar(value.charAt(ii));
+                }
+                public String read (ByteBuffer buf) {
+                    char[] chars = new char[buf.getInt()];
+                    for (int ii = 0; ii < chars.length; ii++) chars[ii] = buf.getChar();
+                    return new String(chars);
+                }
+            });
+        public final System movers = new QuerySystem(this, 0, new Component[] { pos }) {};
+    }
+
+    @Test public void testSnapshot () {
+        SnapWorld world = new SnapWorld();
+        List<Entity> ents = new ArrayList<Entity>();
+        for (int ii = 0; ii < 600; ii++) {
+            Entity e = world.create(ii % 10 != 0).add(world.pos, world.hp, world.born, world.mass);
+            world.pos.set(e.id, ii, -ii);
+            world.hp.set(e.id, ii*2);
+            world.born.set(e.id, (1L << 40) + ii);
+            world.mass.set(e.id, ii / 3.0);
+            if (ii % 3 == 0) {
+                e.add(world.name);
+                world.name.set(e.id, "e" + ii);
+            }
+            ents.add(e);
+        }
+        world.update(null);
+        ents.get(5).dispose(); // pending removal at the time of the snapshot
+        long h7 = ents.get(7).handle();
+
+        ByteBuffer buf = ByteBuffer.allocate(64*1024);
+        world.writeSnapshot(buf);
+        int size = buf.position();
+
+        // scramble the world, then restore it
+        ents.get(7).dispose();
+        world.update(null);
+        Entity extra = world.create(true).add(world.pos);
+        long hextra = extra.handle();
+        for (int ii = 0; ii < 600; ii++) {
+            world.hp.set(ents.get(ii).id, -1);
+            world.born.set(ents.get(ii).id, -1);
+            world.mass.set(ents.get(ii).id, -1);
+        }
+        world.name.set(ents.get(3).id, "changed");
+
+        buf.flip();
+        world.readSnapshot(buf);
+        assertEquals(size, buf.position());
+        assertEquals(0, world.movers.entityCount());
+        world.update(null);
+
+        assertEquals(600 - 60 - 1, world.movers.entityCount());
+        assertTrue(world.isAlive(h7));
+        // extra reused the id of a disposed entity, which the snapshot restores or disposes
+        assertFalse(world.isAlive(hextra));
+        assertTrue(ents.get(5).isDisposed());
+        for (int ii = 0; ii < 600; ii++) {
+            if (ii == 5) continue;
+            Entity e = ents.get(ii);
+            assertEquals(ii % 10 != 0, e.isEnabled());
+            assertTrue(e.has(world.pos));
+            assertEquals(ii, world.pos.getX(e.id), 0);
+            assertEquals(ii*2, world.hp.get(e.id));
+            assertEquals((1L << 40) + ii, world.born.get(e.id));
+            assertEquals(ii / 3.0, world.mass.get(e.id), 0);
+            assertEquals(ii % 3 == 0, e.has(world.name));
+            if (ii % 3 == 0) assertEquals("e" + ii, world.name.get(e.id));
+        }
+
+        // the snapshot can also be restored into a fresh world with the same components
+        SnapWorld copy = new SnapWorld();
+        buf.flip();
+        copy.readSnapshot(buf);
+        copy.update(null);
+        assertEquals(world.movers.entityCount(), copy.movers.entityCount());
+        assertEquals(ents.get(3).handle(), copy.entity(ents.get(3).id).handle());
+        assertEquals(-42, copy.pos.getY(ents.get(42).id), 0);
+        assertEquals("e42", copy.name.get(ents.get(42).id));
+    }
+
+    @Test public void testCommandBuffer () {
+        final QueryWorld qworld = new QueryWorld();
+        final CommandBuffer cmds = new CommandBuffer(qworld);
+        final int[] seen = new int[1];
+        // a system which restructures its entities while iterating over them
+        new QuerySystem(qworld, 1, new Component[] { qworld.a }) {
+            @Override protected void update (Clock clock, Entities entities) {
+                seen[0] = entities.size();
+                for (int ii = 0, ll = entities.size(); ii < ll; ii++) {
+                    int eid = entities.get(ii);
+                    if (qworld.a.get(eid) == 0) cmds.add(eid, qworld.b);
+                    else if (qworld.a.get(eid) == 1) cmds.dispose(eid);
+                    else cmds.remove(eid, qworld.a);
+                }
+                cmds.create(true, new Component[] { qworld.a, qworld.b }, new react.Slot<Entity>() {
+                    public void onEmit (Entity e) { qworld.a.set(e.id, 3); }
+                });
+            }
+        };
+        Entity e0 = qworld.create(true).add(qworld.a), e1 = qworld.create(true).add(qworld.a);
+        Entity e2 = qworld.create(true).add(qworld.a);
+        qworld.a.set(e1.id, 1);
+        qworld.a.set(e2.id, 2);
+        qworld.update(null);
+
+        // nothing changed during the update, then all changes were applied in one batch
+        assertEquals(3, seen[0]);
+        assertTrue(cmds.isEmpty());
+        assertTrue(e0.has(qworld.b));
+        assertTrue(e1.isDisposed());
+        assertFalse(e2.has(qworld.a));
+
+        qworld.update(null);
+        // e0 and the created entity now match the query, and e2 no longer has a
+        assertEquals(2, qworld.sys.entityCount());
+        assertEquals(2, seen[0]);
+    }
+
+    @Test public void testCloseCommandBuffer () {
+        QueryWorld world = new QueryWorld();
+        CommandBuffer cmds = new CommandBuffer(world);
+        assertTrue(world._buffers.contains(cmds));
+        Entity e = world.create(true);
+        cmds.add(e.id, world.a);
+        // a closed buffer discards its commands and is no longer applied
+        cmds.close();
+        assertTrue(cmds.isEmpty());
+        assertFalse(world._buffers.contains(cmds));
+        cmds.add(e.id, world.a);
+        world.update(null);
+        assertFalse(e.has(world.a));
+    }
+
+    @Test public void testStaleCommands () {
+        QueryWorld qworld = new QueryWorld();
+        CommandBuffer cmds = new CommandBuffer(qworld);
+        Entity e0 = qworld.create(true).add(qworld.a);
+        long h0 = e0.handle();
+        cmds.add(e0.id, qworld.b);
+        cmds.dispose(e0.id);
+        cmds.create(true, new Component[] { qworld.a }, null);
+        // e0 is disposed before the buffer is applied, and the entity created by the buffer
+        // reuses its id, but the commands recorded for e0 must not apply to the new entity
+        e0.dispose();
+        qworld.update(null);
+        Entity e1 = qworld.entity(e0.id);
+        assertFalse(qworld.isAlive(h0));
+        assertFalse(e1.isDisposed());
+        assertTrue(e1.has(qworld.a));
+        assertFalse(e1.has(qworld.b));
+    }
+
+    @Test public void testProfiler () {
+        QueryWorld world = new QueryWorld();
+        Profiler prof = new Profiler(world, 4);
+        for (int ii = 0; ii < 3; ii++) world.create(true).add(world.a, world.b);
+        world.update(null); // not yet profiled
+        assertEquals(0, prof.snapshot().update.samples);
+
+        prof.setEnabled(true);
+        assertTrue(prof.isEnabled());
+        world.create(true).add(world.a, world.b);
+        for (int ii = 0; ii < 6; ii++) {
+            world.update(null);
+            world.paint(null);
+        }
+        Profiler.Snapshot snap = prof.snapshot();
+        assertEquals(4, snap.update.samples);
+        assertEquals(4, snap.paint.samples);
+        assertEquals(0, snap.added); // the most recent update added nothing
+        assertEquals(1, snap.peakAdded);
+        assertEquals(2, snap.systems.size());
+        for (Profiler.SystemStats stats : snap.systems) {
+            assertEquals(4, stats.update.samples);
+            assertTrue(stats.update.min <= stats.update.p99);
+            assertTrue(stats.update.p99 <= stats.update.max);
+            if (stats.system == world.sys) assertEquals(4, stats.entities);
+        }
+
+        // profiling also works when updating in parallel
+        world.setTaskPool(TaskPool.SERIAL);
+        prof.reset();
+        world.update(null);
+        assertEquals(1, prof.snapshot().systems.get(0).update.samples);
+
+        prof.setEnabled(false);
+        world.update(null);
+        assertEquals(1, prof.snapshot().update.samples);
+    }
+
     @Test public void testUpdate () {
         TestWorld world = new TestWorld();
         Entity e = world.create(true).add(world.comp);
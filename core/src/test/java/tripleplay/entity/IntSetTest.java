@@ -0,0 +1,77 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.entity;
+
+import java.util.Arrays;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class IntSetTest
+{
+    @Test public void testAddContainsRemove () {
+        IntSet set = new IntSet();
+        for (int ii = 15; ii < 135; ii++) set.add(ii);
+        assertEquals(135-15, set.size());
+        for (int ii = 0; ii < 150; ii++) {
+            assertEquals(ii >= 15 && ii < 135, set.contains(ii));
+        }
+        for (int ii = 0; ii < 150; ii++) {
+            assertEquals(ii >= 15 && ii < 135, set.remove(ii) >= 0);
+            assertFalse(set.contains(ii));
+        }
+        assertEquals(0, set.size());
+    }
+
+    @Test public void testSwapRemove () {
+        IntSet set = new IntSet();
+        set.add(3);
+        set.add(5);
+        set.add(9);
+        set.add(7);
+        // removal swaps the last element into the vacated slot
+        assertEquals(1, set.remove(5));
+        assertEquals(7, set.get(1));
+        assertEquals(1, set.indexOf(7));
+        assertEquals(-1, set.indexOf(5));
+        assertEquals(9, set.removeLast());
+        assertFalse(set.contains(9));
+        set.removeAll();
+        assertFalse(set.contains(3));
+        assertFalse(set.contains(7));
+        set.add(9);
+        assertEquals(0, set.indexOf(9));
+    }
+
+    @Test public void testSort () {
+        IntSet set = new IntSet();
+        int[] elems = { 42, 7, 300, 3, 99, 18 };
+        for (int elem : elems) set.add(elem);
+        set.sort();
+        Arrays.sort(elems);
+        for (int ii = 0; ii < elems.length; ii++) {
+            assertEquals(elems[ii], set.get(ii));
+            assertEquals(ii, set.indexOf(elems[ii]));
+        }
+        assertEquals(2, set.remove(18));
+        assertEquals(300, set.get(2));
+    }
+
+    @Test public void testTrim () {
+        IntSet set = new IntSet();
+        for (int ii = 0; ii < 1000; ii++) set.add(ii);
+        for (int ii = 0; ii < 1000; ii++) if (ii != 5 && ii != 70) set.remove(ii);
+        assertTrue(set.trim() > 0);
+        assertEquals(2, set._elems.length);
+        assertEquals(2*IntSet.INDEX_SIZE, set._index.length);
+        assertEquals(0, set.trim());
+        assertTrue(set.contains(5) && set.contains(70));
+        // the trimmed set grows again as needed
+        for (int ii = 100; ii < 200; ii++) set.add(ii);
+        assertEquals(102, set.size());
+        assertTrue(set.contains(5) && set.contains(70) && set.contains(199));
+    }
+}
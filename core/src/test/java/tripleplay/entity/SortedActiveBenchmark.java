@@ -0,0 +1,66 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.entity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import playn.core.Clock;
+
+import tripleplay.util.Randoms;
+
+/**
+ * Measures the effect of {@link System#setSorted} on a simple position/velocity system whose
+ * entities were enabled in random order (as happens after a while in any game with entity churn).
+ * This is not a unit test; run its {@code main} method with the test classpath.
+ */
+public class SortedActiveBenchmark
+{
+    public static void main (String[] args) {
+        for (int count : new int[] { 10000, 100000 }) {
+            // run each twice, the first to warm up the JIT
+            for (int ii = 0; ii < 2; ii++) {
+                long unsorted = time(count, false), sorted = time(count, true);
+                if (ii == 0) continue;
+                java.lang.System.out.printf("%6d entities: unsorted %6.1fus, sorted %6.1fus%n",
+                                            count, unsorted/1000f, sorted/1000f);
+            }
+        }
+    }
+
+    protected static long time (int count, boolean sorted) {
+        final World world = new World();
+        final Component.XY pos = new Component.XY(world), vel = new Component.XY(world);
+        // make it likely that each entity's data lives in a different cache line than the last
+        final Component.XY[] filler = new Component.XY[4];
+        for (int ii = 0; ii < filler.length; ii++) filler[ii] = new Component.XY(world);
+        System mover = new QuerySystem(world, 0, new Component[] { pos, vel }) {
+            @Override protected void update (Clock clock, Entities entities) {
+                for (int ii = 0, ll = entities.size(); ii < ll; ii++) {
+                    int eid = entities.get(ii);
+                    pos.add(eid, vel.getX(eid), vel.getY(eid));
+                }
+            }
+        };
+        mover.setSorted(sorted);
+
+        List<Entity> ents = new ArrayList<Entity>();
+        for (int ii = 0; ii < count; ii++) {
+            Entity ent = world.create(false).add(pos, vel, filler);
+            vel.set(ent.id, 1, 1);
+            ents.add(ent);
+        }
+        Randoms.with(new Random(42)).shuffle(ents);
+        for (Entity ent : ents) ent.setEnabled(true);
+        world.update(null); // process additions (and sort, if requested)
+
+        int iters = 200;
+        long start = java.lang.System.nanoTime();
+        for (int ii = 0; ii < iters; ii++) world.update(null);
+        return (java.lang.System.nanoTime() - start) / iters;
+    }
+}
@@ -0,0 +1,92 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.entity;
+
+import java.util.Random;
+
+/**
+ * Compares finding all pairs of nearby entities via a {@link SpatialHash} with the brute force
+ * O(n^2) loop, for entities scattered at a constant density (so that each entity has a similar
+ * number of neighbors regardless of the total). Each hashed iteration also moves every entity
+ * and updates the index. This is not a unit test; run its {@code main} method with the test
+ * classpath.
+ */
+public class SpatialHashBenchmark
+{
+    public static void main (String[] args) {
+        for (int count : new int[] { 1000, 10000, 50000 }) {
+            // run each twice, the first to warm up the JIT
+            for (int ii = 0; ii < 2; ii++) {
+                Setup setup = new Setup(count);
+                float hashed = setup.timeHashed(), brute = setup.timeBrute();
+                if (ii == 0) continue;
+                java.lang.System.out.printf(
+                    "%6d entities: brute %9.1fus (%d pairs), hashed %7.1fus (%d pairs)%n",
+                    count, brute, setup.brutePairs, hashed, setup.hashedPairs);
+            }
+        }
+    }
+
+    protected static class Setup implements SpatialHash.PairOp {
+        public final World world = new World();
+        public final Component.XY pos = new Component.XY(world), vel = new Component.XY(world);
+        public final SpatialHash hash = new SpatialHash(pos, RADIUS);
+        public final int[] ids;
+        public int brutePairs, hashedPairs;
+
+        public Setup (int count) {
+            Random rando = new Random(42);
+            // about 40 entities per 100x100 area
+            float size = (float)Math.sqrt(count / 40f) * 100;
+            ids = new int[count];
+            for (int ii = 0; ii < count; ii++) {
+                Entity e = world.create(true).add(pos, vel);
+                pos.set(e.id, rando.nextFloat()*size, rando.nextFloat()*size);
+                vel.set(e.id, rando.nextFloat()-0.5f, rando.nextFloat()-0.5f);
+                hash.add(e.id);
+                ids[ii] = e.id;
+            }
+        }
+
+        public float timeHashed () {
+            int iters = 50;
+            long start = java.lang.System.nanoTime();
+            for (int ii = 0; ii < iters; ii++) {
+                hashedPairs = 0;
+                for (int id : ids) {
+                    pos.add(id, vel);
+                    hash.update(id);
+                }
+                hash.forEachPair(RADIUS, this);
+            }
+            return (java.lang.System.nanoTime() - start) / iters / 1000f;
+        }
+
+        public float timeBrute () {
+            // the O(n^2) loop is too slow to repeat for large counts
+            int iters = (ids.length > 10000) ? 1 : 5;
+            long start = java.lang.System.nanoTime();
+            float r2 = RADIUS*RADIUS;
+            for (int ii = 0; ii < iters; ii++) {
+                brutePairs = 0;
+                for (int aa = 0; aa < ids.length; aa++) {
+                    float ax = pos.getX(ids[aa]), ay = pos.getY(ids[aa]);
+                    for (int bb = aa+1; bb < ids.length; bb++) {
+                        float dx = pos.getX(ids[bb]) - ax, dy = pos.getY(ids[bb]) - ay;
+                        if (dx*dx + dy*dy <= r2) brutePairs++;
+                    }
+                }
+            }
+            return (java.lang.System.nanoTime() - start) / iters / 1000f;
+        }
+
+        @Override public void apply (int entityA, int entityB) {
+            hashedPairs++;
+        }
+    }
+
+    protected static final float RADIUS = 10;
+}
@@ -0,0 +1,94 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.entity;
+
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class SpatialHashTest
+{
+    @Test public void testQueries () {
+        World world = new World();
+        Component.XY pos = new Component.XY(world);
+        SpatialHash hash = new SpatialHash(pos, 10);
+        Random rando = new Random(42);
+        int[] ids = new int[500];
+        for (int ii = 0; ii < ids.length; ii++) {
+            Entity e = world.create(true).add(pos);
+            pos.set(e.id, rando.nextFloat()*200-100, rando.nextFloat()*200-100);
+            hash.add(e.id);
+            ids[ii] = e.id;
+        }
+        assertEquals(ids.length, hash.size());
+        check(pos, hash, ids);
+
+        // move some entities, remove others, and check again
+        for (int ii = 0; ii < ids.length; ii += 2) {
+            pos.add(ids[ii], rando.nextFloat()*40-20, rando.nextFloat()*40-20);
+            hash.update(ids[ii]);
+        }
+        for (int ii = 1; ii < ids.length; ii += 4) hash.remove(ids[ii]);
+        int[] remain = new int[hash.size()];
+        for (int ii = 0, rr = 0; ii < ids.length; ii++) {
+            if (hash.contains(ids[ii])) remain[rr++] = ids[ii];
+        }
+        check(pos, hash, remain);
+
+        hash.clear();
+        IntBag results = new IntBag();
+        hash.queryRadius(0, 0, 1000, results);
+        assertEquals(0, results.size());
+    }
+
+    protected void check (Component.XY pos, SpatialHash hash, int[] ids) {
+        IntBag results = new IntBag();
+        hash.query(-30, -20, 45, 35, results);
+        int expect = 0;
+        for (int id : ids) {
+            float x = pos.getX(id), y = pos.getY(id);
+            if (x >= -30 && x <= 15 && y >= -20 && y <= 15) {
+                expect++;
+                assertTrue(results.contains(id));
+            }
+        }
+        assertEquals(expect, results.size());
+
+        for (float radius : new float[] { 7, 25 }) {
+            results.removeAll();
+            hash.queryRadius(5, -5, radius, results);
+            expect = 0;
+            for (int id : ids) {
+                float dx = pos.getX(id)-5, dy = pos.getY(id)+5;
+                if (dx*dx + dy*dy <= radius*radius) expect++;
+            }
+            assertEquals(expect, results.size());
+
+            final int[] pairs = new int[1];
+            final long[] sum = new long[1];
+            hash.forEachPair(radius, new SpatialHash.PairOp() {
+                public void apply (int a, int b) {
+                    pairs[0]++;
+                    sum[0] += Math.min(a, b) * 100000L + Math.max(a, b);
+                }
+            });
+            int bpairs = 0;
+            long bsum = 0;
+            for (int ii = 0; ii < ids.length; ii++) {
+                for (int jj = ii+1; jj < ids.length; jj++) {
+                    float dx = pos.getX(ids[ii]) - pos.getX(ids[jj]);
+                    float dy = pos.getY(ids[ii]) - pos.getY(ids[jj]);
+                    if (dx*dx + dy*dy > radius*radius) continue;
+                    bpairs++;
+                    bsum += Math.min(ids[ii], ids[jj]) * 100000L + Math.max(ids[ii], ids[jj]);
+                }
+            }
+            assertEquals(bpairs, pairs[0]);
+            assertEquals(bsum, sum[0]);
+        }
+    }
+}
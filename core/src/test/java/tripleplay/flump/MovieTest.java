@@ -0,0 +1,81 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.flump;
+
+import java.util.Arrays;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import pythagoras.f.AffineTransform;
+import pythagoras.f.Point;
+
+import playn.scene.GroupLayer;
+import playn.scene.Layer;
+
+public class MovieTest
+{
+    @Test public void testBake () {
+        Movie.Symbol symbol = createSymbol(), bakedSymbol = createSymbol();
+        bakedSymbol.bake(4);
+        assertEquals(4 * 20 + 1, bakedSymbol.baked().samples());
+
+        // at sample times, baked and unbaked playback should be identical
+        Movie movie = symbol.createInstance(), baked = bakedSymbol.createInstance();
+        for (int ii = 0; ii < 100; ii++) {
+            movie.paint(0.25f);
+            baked.paint(0.25f);
+            Layer layer = movie.getNamedLayer("layer"), blayer = baked.getNamedLayer("layer");
+            assertEquals(layer.visible(), blayer.visible());
+            if (!layer.visible()) continue;
+            AffineTransform xf = layer.transform(), bxf = blayer.transform();
+            assertEquals(xf.m00, bxf.m00, 1e-5f);
+            assertEquals(xf.m01, bxf.m01, 1e-5f);
+            assertEquals(xf.m10, bxf.m10, 1e-5f);
+            assertEquals(xf.m11, bxf.m11, 1e-5f);
+            assertEquals(xf.tx, bxf.tx, 1e-4f);
+            assertEquals(xf.ty, bxf.ty, 1e-4f);
+            assertEquals(layer.alpha(), blayer.alpha(), 1e-5f);
+        }
+
+        // between samples, the baked movie holds the earlier sample
+        baked.setPosition(2.9f);
+        float[] values = new float[7];
+        bakedSymbol.baked().get(0, 11, values, 0);
+        assertEquals(values[4], baked.getNamedLayer("layer").transform().tx, 0);
+    }
+
+    protected Movie.Symbol createSymbol () {
+        Symbol child = new Symbol() {
+            public String name () { return "child"; }
+            public Instance createInstance () {
+                final GroupLayer layer = new GroupLayer();
+                return new Instance() {
+                    public Layer layer () { return layer; }
+                    public void paint (float dt) {}
+                    public void close () { layer.close(); }
+                };
+            }
+        };
+        // a tweened, eased move, rotation and fade; a hold; then a gap in which nothing's shown
+        KeyframeData[] kfs = {
+            keyframe(0, 10, new Point(0, 0), 0, 1, true, 0.5f),
+            keyframe(10, 5, new Point(100, 50), 0.5f, 0.5f, false, 0),
+            keyframe(15, 5, new Point(100, 50), 0.5f, 0.5f, false, 0),
+        };
+        kfs[0]._symbol = kfs[1]._symbol = child;
+        LayerData layer = new LayerData("layer", Arrays.asList(kfs));
+        layer._lastSymbol = child;
+        // one frame per millisecond keeps the test's positions exact
+        return new Movie.Symbol(1000, "movie", Arrays.asList(layer));
+    }
+
+    protected KeyframeData keyframe (int index, int duration, Point loc, float skew, float alpha,
+                                     boolean tweened, float ease) {
+        return new KeyframeData(index, duration, null, loc, new Point(1, 1), new Point(skew, skew),
+                                new Point(0, 0), true, alpha, tweened, ease, "child");
+    }
+}
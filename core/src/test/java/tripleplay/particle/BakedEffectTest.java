@@ -0,0 +1,82 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import react.Signal;
+
+import playn.core.Clock;
+
+import static tripleplay.particle.ParticleBuffer.*;
+import static tripleplay.particle.TestEmitters.frame;
+
+public class BakedEffectTest
+{
+    @Test
+    public void testBake () {
+        Emitter emitter = createEmitter(Generator.impulse(2), 0.55f);
+        BakedEffect effect = BakedEffect.bake(emitter, 10, 5);
+        // the particles are sampled at 0.1 (just after being added) through 0.6 (their last
+        // moment alive), after which the emitter is empty; the last sample is held until 0.7
+        assertEquals(6, effect.sampleCount());
+        assertEquals(0.7f, effect.duration(), 1e-5f);
+        assertEquals(2, effect.maxParticles());
+
+        float[] data = new float[effect.maxParticles() * NUM_FIELDS];
+        assertEquals(0, effect.sample(0.05f, 0, 0, data));
+        assertEquals(2, effect.sample(0.1f, 0, 0, data));
+        assertEquals(10, data[TX], 1e-3f);
+        // between samples, particles are interpolated and offset by the origin
+        assertEquals(2, effect.sample(0.25f, 100, 50, data));
+        for (int pp = 0; pp < 2; pp++) {
+            assertEquals(125, data[pp*NUM_FIELDS + TX], 1e-3f);
+            assertEquals(50, data[pp*NUM_FIELDS + TY], 1e-3f);
+            assertEquals(1, data[pp*NUM_FIELDS + M00], 0);
+        }
+        // after the last sample, particles are held until the effect ends
+        assertEquals(2, effect.sample(0.65f, 0, 0, data));
+        assertEquals(60, data[TX], 1e-3f);
+        assertEquals(0, effect.sample(0.7f, 0, 0, data));
+
+        // a player finishes just as the last sample stops being shown
+        BakedEffect.Player player = new BakedEffect.Player(
+            effect, null, Signal.<Clock>create(), null);
+        player.paint(frame(650));
+        assertFalse(player._done);
+        player.paint(frame(50));
+        assertTrue(player._done);
+    }
+
+    @Test
+    public void testBirthsAndDeaths () {
+        // one particle per sample, each living for just over one sample, so every sample has one
+        // particle which was just born and one which is about to die
+        Emitter emitter = createEmitter(new Generator() {
+            @Override public boolean generate (Emitter emitter, float now, float dt) {
+                emitter.addParticles(1);
+                return now > 0.95f;
+            }
+        }, 0.15f);
+        BakedEffect effect = BakedEffect.bake(emitter, 10, 5);
+        assertEquals(2, effect.maxParticles());
+
+        // between two samples, the particle which lives through both is interpolated, the one
+        // which dies is held where it was, and the one which is born does not yet appear
+        float[] data = new float[effect.maxParticles() * NUM_FIELDS];
+        assertEquals(2, effect.sample(0.35f, 0, 0, data));
+        float x0 = data[TX], x1 = data[NUM_FIELDS + TX];
+        assertEquals(15, Math.min(x0, x1), 1e-3f);
+        assertEquals(20, Math.max(x0, x1), 1e-3f);
+    }
+
+    protected Emitter createEmitter (Generator generator, float lifespan) {
+        Emitter emitter = TestEmitters.createMoving(16, lifespan);
+        emitter.generator = generator;
+        return emitter;
+    }
+}
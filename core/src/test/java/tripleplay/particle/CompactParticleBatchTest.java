@@ -0,0 +1,64 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import playn.core.Color;
+
+import static tripleplay.particle.CompactParticleBatch.*;
+import static tripleplay.particle.ParticleBuffer.*;
+
+public class CompactParticleBatchTest
+{
+    @Test
+    public void testPacking () {
+        // a particle rotated 90 degrees, scaled by two and centered at (100, 50)
+        float[] data = new float[NUM_FIELDS];
+        data[M00] = 0; data[M01] = 2;
+        data[M10] = -2; data[M11] = 0;
+        data[TX] = 100; data[TY] = 50;
+        data[ALPHA_RED] = Color.encode(1, 0.5f);
+        data[GREEN_BLUE] = Color.encode(0.25f, 0);
+
+        Vertices verts = new Vertices();
+        verts.add(-1, -2, 1, 2, data, 0);
+        assertEquals(1, verts.quads);
+        // the corners (l, t), (r, t), (l, b), (r, b), transformed
+        float[] xys = { 104, 48, 104, 52, 96, 48, 96, 52 };
+        for (int cc = 0; cc < 4; cc++) {
+            int vv = cc * VERTEX_SIZE;
+            assertEquals(xys[2*cc], verts.verts[vv], 1e-5f);
+            assertEquals(xys[2*cc+1], verts.verts[vv+1], 1e-5f);
+            // the shader recovers the corner number and the alpha/red from the packed value
+            float packed = verts.verts[vv+2];
+            float corner = (float)Math.floor(packed / CORNER);
+            assertEquals(cc, corner, 0);
+            assertEquals(data[ALPHA_RED], packed - corner * CORNER, 0);
+            assertEquals(data[GREEN_BLUE], verts.verts[vv+3], 0);
+        }
+    }
+
+    @Test
+    public void testFull () {
+        float[] data = new float[NUM_FIELDS];
+        data[M00] = data[M11] = 1;
+        data[ALPHA_RED] = Color.encode(1, 1);
+        Vertices verts = new Vertices();
+        // the vertex array grows as needed, until a single draw call's worth of particles
+        for (int ii = 0; ii < MAX_QUADS; ii++) {
+            assertFalse(verts.isFull());
+            verts.add(-1, -1, 1, 1, data, 0);
+        }
+        assertTrue(verts.isFull());
+        assertEquals(MAX_QUADS * FLOATS_PER_QUAD, verts.verts.length);
+        // the last vertex is addressable by our 16-bit indices
+        assertEquals(65536, MAX_QUADS * 4);
+        float packed = verts.verts[verts.verts.length - FLOATS_PER_QUAD/4 + 2];
+        assertEquals(3, Math.floor(packed / CORNER), 0);
+    }
+}
@@ -0,0 +1,77 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle;
+
+import java.util.Arrays;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import react.Signal;
+
+import playn.core.Clock;
+import playn.core.Scale;
+import playn.core.Texture;
+import playn.scene.GroupLayer;
+import playn.scene.RootLayer;
+
+public class EmitterGroupTest
+{
+    @Test
+    public void testOrdering () {
+        EmitterGroup group = new EmitterGroup(null);
+        Texture tex1 = texture(1), tex2 = texture(2);
+        Emitter a = createEmitter(group, tex2), b = createEmitter(group, tex1);
+        Emitter c = createEmitter(group, tex2), d = createEmitter(group, tex1);
+        assertEquals(4, group.size());
+        // emitters are sorted by texture, and otherwise stay in the order they were added
+        group.validate();
+        assertEquals(Arrays.asList(b, d, a, c), group._emitters);
+
+        Emitter e = createEmitter(group, tex1);
+        group.validate();
+        assertEquals(Arrays.asList(b, d, e, a, c), group._emitters);
+    }
+
+    @Test
+    public void testDisposed () {
+        EmitterGroup group = new EmitterGroup(null);
+        Texture tex = texture(1);
+        Emitter a = createEmitter(group, tex), b = createEmitter(group, tex);
+        Emitter c = createEmitter(group, tex);
+        // emitters are dropped from the group once their layers are disposed
+        b.layer.close();
+        group.validate();
+        assertEquals(Arrays.asList(a, c), group._emitters);
+        assertEquals(2, group.size());
+    }
+
+    @Test
+    public void testShown () {
+        EmitterGroup group = new EmitterGroup(null);
+        Emitter emitter = createEmitter(group, texture(1));
+        RootLayer root = new RootLayer();
+        GroupLayer parent = new GroupLayer();
+        root.add(parent);
+        assertFalse(group.isShown(emitter));
+        parent.add(emitter.layer);
+        assertTrue(group.isShown(emitter));
+        // an emitter is hidden along with any of its ancestors, as if it rendered itself
+        parent.setVisible(false);
+        assertFalse(group.isShown(emitter));
+        parent.setVisible(true);
+        emitter.layer.setVisible(false);
+        assertFalse(group.isShown(emitter));
+    }
+
+    protected Emitter createEmitter (EmitterGroup group, Texture tex) {
+        return new Emitter(group, Signal.<Clock>create(), new ParticleBuffer(8), tex);
+    }
+
+    protected Texture texture (int id) {
+        return new Texture(null, id, Texture.Config.DEFAULT, 1, 1, Scale.ONE, 1, 1);
+    }
+}
@@ -0,0 +1,132 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import pythagoras.f.Rectangle;
+
+import react.Slot;
+
+import tripleplay.particle.effect.Drag;
+
+import static tripleplay.particle.TestEmitters.frame;
+
+public class EmitterTest
+{
+    @Test
+    public void testCulling () {
+        for (Emitter.Culling culling : Emitter.Culling.values()) {
+            final List<Float> empties = new ArrayList<Float>();
+            final Emitter emitter = TestEmitters.createMoving(32, 0.95f);
+            emitter.setCulling(culling);
+            emitter.onEmpty.connect(new Slot<Emitter>() {
+                public void onEmit (Emitter e) { empties.add(e._time); }
+            });
+            emitter.addParticles(10);
+            // move for one frame, then hide the emitter for the rest of the particles' lives
+            emitter.paint(frame(100));
+            assertEquals(10, particleX(emitter), 0.01f);
+            emitter.layer.setVisible(false);
+            for (int ii = 0; ii < 20; ii++) emitter.paint(frame(100));
+            assertEquals(culling != Emitter.Culling.NONE, emitter.isCulled());
+
+            switch (culling) {
+            case NONE:
+                assertEquals(1.0f, empties.get(0), 0.01f);
+                break;
+            case PAUSE:
+                // nothing happens until we're visible again
+                assertEquals(0, empties.size());
+                assertEquals(10, particleX(emitter), 0.01f);
+                emitter.layer.setVisible(true);
+                for (int ii = 0; ii < 20; ii++) emitter.paint(frame(100));
+                assertEquals(1.0f, empties.get(0), 0.01f);
+                break;
+            case FAST_FORWARD:
+                // we don't move while culled, but we still expire on time
+                assertEquals(10, particleX(emitter), 0.01f);
+                assertEquals(1.0f, empties.get(0), 0.01f);
+                break;
+            case COARSE:
+                // we move every quarter second (here, every third frame) while culled, in steps
+                // of at most a quarter second, the last of which ends before the particles expire
+                assertEquals(85, particleX(emitter), 0.01f);
+                assertEquals(1.0f, empties.get(0), 0.01f);
+                break;
+            }
+        }
+    }
+
+    @Test
+    public void testViewportCulling () {
+        Emitter emitter = TestEmitters.createMoving(32, 0.95f);
+        Rectangle view = new Rectangle(0, 0, 50, 50);
+        emitter.setCulling(Emitter.Culling.FAST_FORWARD, view, 5);
+        emitter.addParticles(10);
+        emitter.paint(frame(100));
+        assertFalse(emitter.isCulled());
+
+        // our particles are at x=10 (they're not moved again until unculled)
+        view.setLocation(16, 0);
+        emitter.paint(frame(100));
+        assertTrue(emitter.isCulled());
+        assertEquals(10, particleX(emitter), 0.01f);
+
+        // once we're unculled, the particles catch up on the missed time in one step
+        view.setLocation(0, 0);
+        emitter.paint(frame(100));
+        assertFalse(emitter.isCulled());
+        assertEquals(30, particleX(emitter), 0.01f);
+    }
+
+    @Test
+    public void testCulledDrag () {
+        for (Emitter.Culling culling : new Emitter.Culling[] {
+                Emitter.Culling.FAST_FORWARD, Emitter.Culling.COARSE }) {
+            Emitter emitter = TestEmitters.createMoving(32, 5);
+            emitter.effectors.add(new Drag(0.5f));
+            emitter.setCulling(culling);
+            emitter.addParticles(1);
+            // move, then halve our velocity, for one frame
+            emitter.paint(frame(100));
+            assertEquals(10, particleX(emitter), 0.01f);
+            assertEquals(50, particleVelX(emitter), 0.01f);
+
+            // hide the emitter for 0.9 seconds, then show it for one frame: the full second is
+            // applied in quarter second steps, each of which moves and then drags the particle
+            emitter.layer.setVisible(false);
+            for (int ii = 0; ii < 9; ii++) emitter.paint(frame(100));
+            emitter.layer.setVisible(true);
+            emitter.paint(frame(100));
+            assertFalse(emitter.isCulled());
+            // (COARSE instead applies its effectors every 0.3 seconds while culled, each time in
+            // two steps, and then applies the last frame in one step)
+            float x = 10, vx = 50;
+            float[] steps = (culling == Emitter.Culling.COARSE) ?
+                new float[] { 0.15f, 0.15f, 0.15f, 0.15f, 0.15f, 0.15f, 0.1f } :
+                new float[] { 0.25f, 0.25f, 0.25f, 0.25f };
+            for (float step : steps) {
+                x += vx * step;
+                vx *= 0.5f;
+            }
+            assertEquals(x, particleX(emitter), 0.01f);
+            assertEquals(vx, particleVelX(emitter), 0.01f);
+        }
+    }
+
+    protected float particleX (Emitter emitter) {
+        return emitter._buffer.data[ParticleBuffer.TX];
+    }
+
+    protected float particleVelX (Emitter emitter) {
+        return emitter._buffer.data[ParticleBuffer.VEL_X];
+    }
+}
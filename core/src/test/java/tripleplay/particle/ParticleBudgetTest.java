@@ -0,0 +1,126 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import react.Signal;
+
+import playn.core.Clock;
+
+import static tripleplay.particle.TestEmitters.frame;
+
+public class ParticleBudgetTest
+{
+    @Test
+    public void testThrottle () {
+        Signal<Clock> paint = Signal.create();
+        ParticleBudget budget = new ParticleBudget(paint, 50);
+        Emitter low = TestEmitters.create(1000, 100), high = TestEmitters.create(1000, 100);
+        budget.add(low, 0);
+        budget.add(high, 1);
+        low.generator = steady(10);
+        high.generator = steady(10);
+
+        // each emitter adds 10 particles per frame, and none expire, so we soon exceed our budget
+        // (which is checked at the start of each frame) and the low priority emitter is
+        // throttled, by 0.25 more each frame
+        for (int ii = 0; ii < 3; ii++) frame(paint, FRAME, low, high);
+        assertEquals(40, budget.liveCount());
+        assertEquals(0, budget.level(), 0);
+        frame(paint, FRAME, low, high);
+        assertEquals(60, budget.liveCount());
+        assertEquals(0.25f, budget.level(), 0);
+        assertEquals(0.75f, budget.emitScale(0), 0);
+        assertEquals(1f, budget.emitScale(1), 0);
+        assertEquals(30 + 7, low._buffer.liveCount()); // and half a particle owed
+        assertEquals(40, high._buffer.liveCount());
+
+        // after four frames over budget, the low priority emitter has stopped, and the high
+        // priority emitter is throttled only after that
+        for (int ii = 0; ii < 3; ii++) frame(paint, FRAME, low, high);
+        assertEquals(1, budget.level(), 0);
+        assertEquals(37 + 5 + 3 + 0, low._buffer.liveCount());
+        assertEquals(70, high._buffer.liveCount());
+        frame(paint, FRAME, low, high);
+        assertEquals(45, low._buffer.liveCount());
+        assertEquals(77, high._buffer.liveCount());
+
+        // the level is capped once every emitter is throttled
+        for (int ii = 0; ii < 20; ii++) frame(paint, FRAME, low, high);
+        assertEquals(2, budget.level(), 0);
+
+        // once we're well under budget, throttling eases
+        low._buffer.killOldest(1000);
+        high._buffer.killOldest(1000);
+        frame(paint, FRAME, low, high);
+        assertEquals(1.75f, budget.level(), 0);
+    }
+
+    @Test
+    public void testKillOldest () {
+        Signal<Clock> paint = Signal.create();
+        ParticleBudget budget = new ParticleBudget(paint, 10);
+        budget.killOldest = true;
+        Emitter low = TestEmitters.create(1000, 100), high = TestEmitters.create(1000, 100);
+        budget.add(high, 1);
+        budget.add(low, 0);
+
+        low.addParticles(8);
+        high.addParticles(4);
+        frame(paint, FRAME, low, high);
+        low.addParticles(8);
+        // we're 10 over budget, so our low priority emitter loses its 8 oldest particles, then 2
+        // of its younger particles
+        frame(paint, FRAME, low, high);
+        assertEquals(10, budget.liveCount());
+        assertEquals(6, low._buffer.liveCount());
+        assertEquals(4, high._buffer.liveCount());
+        float[] data = low._buffer.data;
+        for (int pp = 0; pp < 16; pp++) {
+            if (low._buffer.isAlive(pp)) {
+                assertEquals(0.125f, data[pp*ParticleBuffer.NUM_FIELDS + ParticleBuffer.BIRTH],
+                             1e-5f);
+            }
+        }
+    }
+
+    @Test
+    public void testRemove () {
+        Signal<Clock> paint = Signal.create();
+        ParticleBudget budget = new ParticleBudget(paint, 10);
+        Emitter low = TestEmitters.create(1000, 100), mid = TestEmitters.create(1000, 100);
+        Emitter high = TestEmitters.create(1000, 100);
+        budget.add(low, 0);
+        budget.add(mid, 1);
+        budget.add(high, 2);
+        low.addParticles(20);
+        for (int ii = 0; ii < 20; ii++) frame(paint, FRAME, low, mid, high);
+        assertEquals(3, budget.level(), 0);
+
+        // the level is capped by the highest remaining priority, whether an emitter is removed
+        // explicitly or pruned because its layer was disposed
+        budget.remove(high);
+        assertEquals(2, budget.level(), 0);
+        mid.layer.close();
+        frame(paint, FRAME, low);
+        assertEquals(1, budget.size());
+        assertEquals(1, budget.level(), 0);
+        assertEquals(0, budget.emitScale(0), 0);
+    }
+
+    protected Generator steady (final int perFrame) {
+        return new Generator() {
+            @Override public boolean generate (Emitter emitter, float now, float dt) {
+                emitter.addParticles(perFrame);
+                return false;
+            }
+        };
+    }
+
+    protected static final int FRAME = 125;
+}
@@ -0,0 +1,66 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import tripleplay.particle.effect.Alpha;
+import tripleplay.particle.effect.Drag;
+import tripleplay.particle.effect.Gravity;
+import tripleplay.particle.effect.Move;
+import tripleplay.particle.init.Lifespan;
+import tripleplay.particle.init.Transform;
+import tripleplay.particle.init.Velocity;
+import tripleplay.util.Interpolator;
+import tripleplay.util.Randoms;
+
+/**
+ * Compares the cost of {@link ParticleBuffer#apply} for a full buffer with the stock effectors
+ * applied per-particle to an array of structures, in bulk to an array of structures, and in bulk
+ * to a structure of arrays. This is not a unit test; run its {@code main} method with the test
+ * classpath.
+ */
+public class ParticleBufferBenchmark
+{
+    public static void main (String[] args) {
+        final List<Effector> bulk = Arrays.asList(
+            new Gravity(), new Drag(0.95f), new Move(), Alpha.byAge(Interpolator.LINEAR));
+        // hide the bulk implementations behind effectors that only implement apply
+        List<Effector> single = new ArrayList<Effector>();
+        for (final Effector eff : bulk) single.add(new Effector() {
+            @Override public void apply (int index, float[] data, int start, float now, float dt) {
+                eff.apply(index, data, start, now, dt);
+            }
+        });
+
+        for (int count : new int[] { 1000, 10000, 50000 }) {
+            // run each twice, the first to warm up the JIT
+            for (int ii = 0; ii < 2; ii++) {
+                float aosSingle = time(count, false, single), aosBulk = time(count, false, bulk);
+                float soaSingle = time(count, true, single), soaBulk = time(count, true, bulk);
+                if (ii == 0) continue;
+                java.lang.System.out.printf(
+                    "%6d particles: AoS per-particle %7.1fus, AoS bulk %7.1fus, " +
+                    "SoA per-particle %7.1fus, SoA bulk %7.1fus%n",
+                    count, aosSingle, aosBulk, soaSingle, soaBulk);
+            }
+        }
+    }
+
+    protected static float time (int count, boolean soa, List<Effector> effectors) {
+        ParticleBuffer buffer = new ParticleBuffer(count, soa);
+        Randoms rando = Randoms.with(new Random(42));
+        buffer.add(count, 0, Arrays.asList(
+            Lifespan.constant(1000), Transform.identity(), Velocity.randomCircle(rando, 50)));
+        int iters = 500;
+        long start = java.lang.System.nanoTime();
+        for (int ii = 0; ii < iters; ii++) buffer.apply(effectors, ii/60f, 1/60f);
+        return (java.lang.System.nanoTime() - start) / iters / 1000f;
+    }
+}
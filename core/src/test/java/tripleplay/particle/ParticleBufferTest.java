@@ -6,15 +6,29 @@
 package tripleplay.particle;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
 import org.junit.*;
 import static org.junit.Assert.*;
 
+import tripleplay.particle.effect.AgeTable;
+import tripleplay.particle.effect.Alpha;
+import tripleplay.particle.effect.Drag;
+import tripleplay.particle.effect.Gravity;
+import tripleplay.particle.effect.Move;
+import tripleplay.particle.effect.ScaleRotate;
+import tripleplay.particle.effect.Tint;
+import tripleplay.particle.init.Lifespan;
+import tripleplay.particle.init.Transform;
+import tripleplay.particle.init.Velocity;
+import tripleplay.util.Interpolator;
 import tripleplay.util.Randoms;
+import tripleplay.util.TaskPool;
 
 public class ParticleBufferTest
 {
@@ -55,4 +69,190 @@ public class ParticleBufferTest
         }), 0, 0);
         assertEquals(100, applied[0]);
     }
+
+    @Test
+    public void testAddFillsFreeSlots () {
+        // use a capacity that is not a multiple of 32 to check that we never add past the end
+        int maxParts = 100;
+        ParticleBuffer buffer = new ParticleBuffer(maxParts);
+        List<Initializer> none = new ArrayList<Initializer>();
+        buffer.add(70, 0, none);
+        for (int pp = 0; pp < maxParts; pp++) assertEquals(pp < 70, buffer.isAlive(pp));
+
+        // free up some slots behind the last added particle; they should be refilled first
+        buffer.setAlive(3, false);
+        buffer.setAlive(40, false);
+        buffer.setAlive(41, false);
+        buffer.add(5, 0, none);
+        for (int pp = 0; pp < maxParts; pp++) assertEquals(pp < 72, buffer.isAlive(pp));
+
+        // adding more than there is room for fills the buffer and no more
+        buffer.add(50, 0, none);
+        for (int pp = 0; pp < maxParts; pp++) assertTrue(buffer.isAlive(pp));
+        for (int aa = 0; aa < buffer.alive.length; aa++) {
+            int bits = Math.min(32, maxParts - aa*32);
+            assertEquals(bits, Integer.bitCount(buffer.alive[aa]));
+        }
+    }
+
+    @Test
+    public void testLiveCount () {
+        int maxParts = 1000;
+        ParticleBuffer buffer = new ParticleBuffer(maxParts);
+        List<Initializer> initters = Collections.<Initializer>singletonList(new Initializer() {
+            @Override public void init (int index, float[] data, int start) {
+                // particles in odd slots die after one second, the rest after ten
+                data[start + ParticleBuffer.LIFESPAN] = (index % 2 == 1) ? 1 : 10;
+            }
+        });
+        buffer.add(300, 0, initters);
+        buffer.setAlive(900, true);
+        buffer.data[900*ParticleBuffer.NUM_FIELDS + ParticleBuffer.LIFESPAN] = 1;
+        assertEquals(301, buffer.liveCount());
+
+        final List<Integer> visited = new ArrayList<Integer>();
+        Effector track = new Effector() {
+            @Override public void apply (int index, float[] data, int start, float now, float dt) {
+                visited.add(index);
+            }
+        };
+        assertEquals(301, buffer.apply(Collections.singletonList(track), 0.5f, 0));
+        assertEquals(301, visited.size());
+        assertEquals(900, visited.get(300).intValue());
+
+        // kill the odd particles and the stray at 900
+        visited.clear();
+        assertEquals(150, buffer.apply(Collections.singletonList(track), 2, 0));
+        assertEquals(150, buffer.liveCount());
+        assertEquals(150, visited.size());
+        for (int ii = 0; ii < 150; ii++) assertEquals(2*ii, visited.get(ii).intValue());
+
+        // new particles fill the holes left by the dead
+        buffer.add(10, 2, initters);
+        assertEquals(160, buffer.liveCount());
+        for (int pp = 0; pp < 20; pp++) assertTrue(buffer.isAlive(pp));
+    }
+
+    @Test
+    public void testStructOfArrays () {
+        int maxParts = 1000;
+        ParticleBuffer aos = new ParticleBuffer(maxParts), soa = new ParticleBuffer(maxParts, true);
+        // a per-particle effector, which must also work in struct of arrays mode
+        Effector spin = new Effector() {
+            @Override public void apply (int index, float[] data, int start, float now, float dt) {
+                ParticleBuffer.multiply(data, start, 0, 1, -1, 0, 0, 0);
+            }
+        };
+        List<Effector> effectors = Arrays.asList(
+            new Gravity(), new Drag(0.9f), new Move(), spin, Alpha.byAge(Interpolator.LINEAR));
+
+        for (ParticleBuffer buffer : new ParticleBuffer[] { aos, soa }) {
+            Randoms rando = Randoms.with(new Random(42));
+            List<Initializer> initters = Arrays.asList(
+                Lifespan.random(rando, 0.5f, 1.5f), Transform.randomPos(rando, 0, 0, 100, 100),
+                Velocity.randomCircle(rando, 50),
+                tripleplay.particle.init.Color.constant(0xFF336699));
+            float now = 0;
+            for (int ii = 0; ii < 60; ii++) {
+                now += 1/30f;
+                if (ii < 20) buffer.add(25, now, initters);
+                buffer.apply(effectors, now, 1/30f);
+            }
+        }
+
+        int living = 0;
+        for (int pp = 0; pp < maxParts; pp++) {
+            assertEquals(aos.isAlive(pp), soa.isAlive(pp));
+            if (!aos.isAlive(pp)) continue;
+            living++;
+            for (int ff = 0; ff < ParticleBuffer.NUM_FIELDS; ff++) {
+                assertEquals(aos.data[pp*ParticleBuffer.NUM_FIELDS + ff], soa.fields[ff][pp], 0);
+            }
+        }
+        assertTrue(living > 0);
+    }
+
+    @Test
+    public void testParallelApply () {
+        int maxParts = 2000;
+        ParticleBuffer serial = new ParticleBuffer(maxParts, true);
+        ParticleBuffer parallel = new ParticleBuffer(maxParts, true);
+        final List<Integer> batches = new ArrayList<Integer>();
+        parallel.setTaskPool(new TaskPool() {
+            @Override public int parallelism () { return 4; }
+            @Override public void invokeAll (Runnable[] tasks, int count) {
+                batches.add(count);
+                // run the chunks in reverse to check that they are independent
+                for (int ii = count-1; ii >= 0; ii--) tasks[ii].run();
+            }
+        }, 500);
+        Effector spin = new Effector() {
+            @Override public void apply (int index, float[] data, int start, float now, float dt) {
+                ParticleBuffer.multiply(data, start, 0, 1, -1, 0, 0, 0);
+            }
+        };
+        List<Effector> effectors = Arrays.asList(new Gravity(), new Move(), spin);
+
+        for (ParticleBuffer buffer : new ParticleBuffer[] { serial, parallel }) {
+            Randoms rando = Randoms.with(new Random(7));
+            List<Initializer> initters = Arrays.asList(
+                Lifespan.constant(10), Transform.randomPos(rando, 0, 0, 100, 100),
+                Velocity.randomCircle(rando, 50));
+            for (int ii = 0; ii < 10; ii++) {
+                buffer.add(100, ii/30f, initters);
+                buffer.apply(effectors, ii/30f, 1/30f);
+            }
+        }
+
+        // the first four frames have too few particles to be worth splitting up
+        assertEquals(Arrays.asList(4, 4, 4, 4, 4, 4), batches);
+        for (int ff = 0; ff < ParticleBuffer.NUM_FIELDS; ff++) {
+            assertArrayEquals(serial.fields[ff], parallel.fields[ff], 0);
+        }
+    }
+
+    @Test
+    public void testAgeEffectors () {
+        Effector color = Tint.gradient(0xFF336699, 0x80FFFFFF, 0x00000000);
+        Effector alpha = Alpha.byAgeTable(AgeTable.keys(1, 0));
+        Effector xform = ScaleRotate.byAge(
+            AgeTable.of(Interpolator.LINEAR, 1, 3), AgeTable.of(Interpolator.LINEAR, 0, 0));
+        for (boolean soa : new boolean[] { false, true }) {
+            ParticleBuffer buffer = new ParticleBuffer(1, soa);
+            buffer.add(1, 0, Arrays.asList(Lifespan.constant(2)));
+            float[] data = new float[ParticleBuffer.NUM_FIELDS];
+            // at birth, mid-life and death, we should see each of the gradient's colors
+            int[] argbs = { 0xFF336699, 0x80FFFFFF, 0x00000000 };
+            for (int ii = 0; ii < 3; ii++) {
+                buffer.apply(Arrays.asList(color, xform), ii, 0);
+                read(buffer, data);
+                // mid-life falls between two samples, so we may be a step away from the middle
+                int actual = argb(data);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    assertEquals((argbs[ii] >>> shift) & 0xFF, (actual >>> shift) & 0xFF, 1);
+                }
+                assertEquals(1 + ii, data[ParticleBuffer.M00], 1e-2f);
+                assertEquals(0, data[ParticleBuffer.M01], 0);
+            }
+
+            // alpha changes only the alpha
+            buffer.apply(Arrays.asList(color), 1, 0);
+            read(buffer, data);
+            int rgb = argb(data) & 0xFFFFFF;
+            buffer.apply(Arrays.asList(alpha), 2, 0);
+            read(buffer, data);
+            assertEquals(rgb, argb(data));
+        }
+    }
+
+    protected static void read (ParticleBuffer buffer, float[] data) {
+        for (int ff = 0; ff < ParticleBuffer.NUM_FIELDS; ff++) {
+            data[ff] = (buffer.data != null) ? buffer.data[ff] : buffer.fields[ff][0];
+        }
+    }
+
+    protected static int argb (float[] data) {
+        int ar = (int)data[ParticleBuffer.ALPHA_RED], gb = (int)data[ParticleBuffer.GREEN_BLUE];
+        return (ar / 256) << 24 | (ar % 256) << 16 | (gb / 256) << 8 | (gb % 256);
+    }
 }
@@ -0,0 +1,57 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.particle;
+
+import pythagoras.f.Vector;
+
+import react.Signal;
+
+import playn.core.Clock;
+
+import tripleplay.particle.effect.Move;
+import tripleplay.particle.init.Lifespan;
+import tripleplay.particle.init.Transform;
+import tripleplay.particle.init.Velocity;
+
+/**
+ * Helpers for tests which drive emitters directly, without a batch or a scene graph.
+ */
+public class TestEmitters
+{
+    /** Creates an emitter whose particles start at the origin and live for {@code lifespan}
+     * seconds. It has no generator. */
+    public static Emitter create (int capacity, float lifespan) {
+        Emitter emitter = new Emitter((ParticleBatch)null, Signal.<Clock>create(),
+                                      new ParticleBuffer(capacity), null);
+        emitter.initters.add(Lifespan.constant(lifespan));
+        emitter.initters.add(Transform.identity());
+        return emitter;
+    }
+
+    /** Creates an emitter as {@link #create}, whose particles move right at 100 units per
+     * second. */
+    public static Emitter createMoving (int capacity, float lifespan) {
+        Emitter emitter = create(capacity, lifespan);
+        emitter.initters.add(Velocity.constant(new Vector(100, 0)));
+        emitter.effectors.add(new Move());
+        return emitter;
+    }
+
+    /** Returns a clock for a frame which lasted {@code dt} milliseconds. */
+    public static Clock frame (int dt) {
+        Clock clock = new Clock();
+        clock.dt = dt;
+        return clock;
+    }
+
+    /** Simulates a frame of {@code dt} milliseconds: emits it on {@code paint}, then paints
+     * {@code emitters}. */
+    public static void frame (Signal<Clock> paint, int dt, Emitter... emitters) {
+        Clock clock = frame(dt);
+        paint.emit(clock);
+        for (Emitter emitter : emitters) emitter.paint(clock);
+    }
+}
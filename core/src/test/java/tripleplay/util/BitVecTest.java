@@ -18,4 +18,28 @@ public class BitVecTest
         for (int ii = 0; ii < 10000; ii++) vec.clear(ii);
         for (int ii = 0; ii < 10000; ii++) assertFalse(vec.isSet(ii));
     }
+
+    @Test public void testSetOps () {
+        BitVec a = new BitVec(1), b = new BitVec(1);
+        assertTrue(a.isEmpty());
+        assertEquals(-1, a.nextSetBit(0));
+        a.set(3); a.set(40); a.set(97);
+        assertFalse(a.isEmpty());
+        assertEquals(3, a.nextSetBit(0));
+        assertEquals(40, a.nextSetBit(4));
+        assertEquals(97, a.nextSetBit(41));
+        assertEquals(-1, a.nextSetBit(98));
+        assertEquals(-1, a.nextSetBit(5000));
+
+        assertTrue(a.containsAll(b));
+        assertFalse(a.intersects(b));
+        b.set(40);
+        assertTrue(a.containsAll(b));
+        assertTrue(a.intersects(b));
+        b.set(200);
+        assertFalse(a.containsAll(b));
+        assertTrue(a.intersects(b));
+        b.clear(40);
+        assertFalse(a.intersects(b));
+    }
 }
@@ -0,0 +1,68 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import java.util.Random;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public class FastRandomTest
+{
+    @Test public void testSeed () {
+        FastRandom a = new FastRandom(42), b = new FastRandom(42), c = new FastRandom(43);
+        boolean differs = false;
+        for (int ii = 0; ii < 100; ii++) {
+            int av = a.nextInt();
+            assertEquals(av, b.nextInt());
+            differs |= (av != c.nextInt());
+        }
+        assertTrue(differs);
+
+        a.setSeed(7);
+        b.setSeed(7);
+        for (int ii = 0; ii < 100; ii++) assertEquals(a.nextGaussian(), b.nextGaussian(), 0);
+    }
+
+    @Test public void testRanges () {
+        FastRandom r = new FastRandom(1);
+        int[] counts = new int[10];
+        for (int ii = 0; ii < 10000; ii++) {
+            float f = r.nextFloat();
+            assertTrue(f >= 0 && f < 1);
+            int n = r.nextInt(10);
+            assertTrue(n >= 0 && n < 10);
+            counts[n]++;
+        }
+        // we should see a roughly even distribution
+        for (int count : counts) assertTrue(count > 800 && count < 1200);
+    }
+
+    @Test public void testFill () {
+        FastRandom a = new FastRandom(99), b = new FastRandom(99);
+        float[] values = new float[102];
+        a.fill(values, 1, 100, -5, 5);
+        assertEquals(0, values[0], 0);
+        assertEquals(0, values[101], 0);
+        for (int ii = 1; ii <= 100; ii++) {
+            assertEquals(-5 + b.nextFloat() * 10, values[ii], 1e-5f);
+        }
+        // the two generators should now be in the same state
+        assertEquals(a.nextInt(), b.nextInt());
+    }
+
+    @Test public void testRandomsFill () {
+        // the bulk fill should produce the same values as individual calls
+        for (Random rand : new Random[] { new Random(5), new FastRandom(5) }) {
+            Randoms bulk = Randoms.with(rand);
+            Randoms single = Randoms.with(rand instanceof FastRandom ?
+                                          new FastRandom(5) : new Random(5));
+            float[] values = new float[50];
+            bulk.getInRange(values, 0, values.length, 2, 3);
+            for (float value : values) assertEquals(single.getInRange(2f, 3f), value, 1e-5f);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import react.Slot;
+
+import playn.core.Clock;
+
+public class FixedStepTest {
+
+    @Test public void testSteps () {
+        FixedStep fixed = new FixedStep(10, 3);
+        final List<Integer> updates = new ArrayList<Integer>();
+        final float[] alpha = new float[1];
+        final int[] dt = new int[1];
+        fixed.update.connect(new Slot<Clock>() {
+            public void onEmit (Clock clock) {
+                assertEquals(10, clock.dt);
+                updates.add(clock.tick);
+            }
+        });
+        fixed.paint.connect(new Slot<Clock>() {
+            public void onEmit (Clock clock) {
+                alpha[0] = clock.alpha;
+                dt[0] = clock.dt;
+            }
+        });
+
+        fixed.onFrame(100); // the first frame just establishes the start time
+        assertEquals(0, updates.size());
+        assertEquals(0, alpha[0], 0);
+        assertEquals(0, dt[0]);
+
+        fixed.onFrame(125);
+        assertEquals(2, updates.size());
+        assertEquals(110, (int)updates.get(0));
+        assertEquals(120, (int)updates.get(1));
+        assertEquals(0.5f, alpha[0], 1e-6);
+        assertEquals(25, dt[0]);
+
+        fixed.onFrame(130);
+        assertEquals(3, updates.size());
+        assertEquals(0, alpha[0], 1e-6);
+
+        // a long frame performs at most three updates and drops the rest
+        updates.clear();
+        fixed.onFrame(187);
+        assertEquals(3, updates.size());
+        assertEquals(20, fixed.droppedMillis());
+        assertEquals(0.7f, alpha[0], 1e-6);
+
+        fixed.onFrame(190);
+        assertEquals(4, updates.size());
+        assertEquals(170, (int)updates.get(3));
+    }
+}
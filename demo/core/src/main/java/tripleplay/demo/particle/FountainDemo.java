@@ -8,6 +8,7 @@ package tripleplay.demo.particle;
 import playn.core.Canvas;
 import playn.core.Tile;
 
+import tripleplay.particle.CompactParticleBatch;
 import tripleplay.particle.Emitter;
 import tripleplay.particle.Generator;
 import tripleplay.particle.ParticleBatch;
@@ -33,6 +34,11 @@ public class FountainDemo extends ParticleDemo
         return "Particles: Fountain";
     }
 
+    @Override protected ParticleBatch createBatch () {
+        // our particles are all drawn from one tile, which suits the compact vertex format
+        return new CompactParticleBatch(graphics().gl);
+    }
+
     @Override protected void createParticles (ParticleBatch batch, Randoms rando) {
         Canvas image = graphics().createCanvas(7, 7);
         image.setFillColor(0xFFFFFFFF);
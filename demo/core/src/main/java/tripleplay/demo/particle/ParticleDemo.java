@@ -25,7 +25,7 @@ public abstract class ParticleDemo extends DemoScreen
 {
     @Override public void showTransitionCompleted () {
         super.showTransitionCompleted();
-        ParticleBatch batch = new ParticleBatch(graphics().gl);
+        ParticleBatch batch = createBatch();
         closeOnHide(batch);
         createParticles(batch, _rando);
     }
@@ -42,6 +42,10 @@ public abstract class ParticleDemo extends DemoScreen
 
     protected abstract void createParticles (ParticleBatch batch, Randoms rando);
 
+    protected ParticleBatch createBatch () {
+        return new ParticleBatch(graphics().gl);
+    }
+
     protected void add (Emitter emitter) {
         layer.add(emitter.layer.setDepth(1));
         _emitters.add(emitter);
@@ -28,6 +28,7 @@ import react.Value;
 import playn.java.JavaImage;
 import playn.java.JavaPlatform;
 import tripleplay.ui.Field;
+import tripleplay.util.TaskPool;
 
 import static tripleplay.platform.Log.log;
 
@@ -134,6 +135,11 @@ public class JavaTPPlatform extends TPPlatform
         return new JavaImageOverlay(this, image);
     }
 
+    @Override public TaskPool taskPool () {
+        if (_taskPool == null) _taskPool = new JavaTaskPool();
+        return _taskPool;
+    }
+
     @Override public void clearFocus () {
         EventQueue.invokeLater(new Runnable() {
             @Override public void run () {
@@ -196,4 +202,5 @@ public class JavaTPPlatform extends TPPlatform
     protected JFrame _frame;
     protected OS _os = OS.UNKNOWN;
     protected Set<JavaNativeOverlay> _overlays = new HashSet<JavaNativeOverlay>();
+    protected JavaTaskPool _taskPool;
 }
@@ -0,0 +1,61 @@
+//
+// Triple Play - utilities for use in PlayN-based games
+// Copyright (c) 2011-2018, Triple Play Authors - All rights reserved.
+// http://github.com/threerings/tripleplay/blob/master/LICENSE
+
+package tripleplay.platform;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import tripleplay.util.TaskPool;
+
+/**
+ * A {@link TaskPool} backed by a {@link ForkJoinPool}. The calling thread runs one of the tasks
+ * itself rather than idling while it waits for the others.
+ */
+public class JavaTaskPool extends TaskPool
+{
+    /** Creates a task pool with one worker per available processor. */
+    public JavaTaskPool () {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Creates a task pool with the specified number of workers. */
+    public JavaTaskPool (int parallelism) {
+        _pool = new ForkJoinPool(parallelism);
+    }
+
+    @Override public int parallelism () {
+        return _pool.getParallelism();
+    }
+
+    @Override public void invokeAll (Runnable[] tasks, int count) {
+        if (count == 0) return;
+        // note: we allocate this each time because tasks may themselves call invokeAll
+        ForkJoinTask<?>[] forks = new ForkJoinTask<?>[count];
+        for (int ii = 1; ii < count; ii++) forks[ii] = _pool.submit(tasks[ii]);
+
+        // run the first task ourselves, then wait for the rest to complete; we must join every
+        // forked task even if one fails (with an error or an exception), so that none of them is
+        // still running when we return
+        Throwable error = null;
+        try {
+            tasks[0].run();
+        } catch (Throwable t) {
+            error = t;
+        }
+        for (int ii = 1; ii < count; ii++) {
+            try {
+                forks[ii].join();
+            } catch (Throwable t) {
+                if (error == null) error = t;
+            }
+        }
+        // tasks are runnables, and join only rethrows what they threw, so this is unchecked
+        if (error instanceof Error) throw (Error)error;
+        if (error != null) throw (RuntimeException)error;
+    }
+
+    protected final ForkJoinPool _pool;
+}